@@ -0,0 +1,119 @@
+/*************************************************************************************
+ * Basket
+ * -----------------------------------------------------------------------------------
+ * A basket holds every line (product name and amount) of one customer's purchase so
+ * the register can ring it up in one go. Register.Purchase(Basket) looks up every
+ * line, then takes the locks for all the products at once and either applies every
+ * line or none of them, so a basket is never partly sold. The result is a status
+ * for each line instead of a message string.
+ * BasketReplay reads a file of recorded transactions and rings each one up as a
+ * basket, for importing sales from another point of sale system.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;           // For reading transaction files
+import java.util.*;         // For Arrays
+
+// The outcome of one line of a basket
+enum PurchStatus {
+    SUCCESS("Purchase Successful"),
+    INVALID_NAME("Purchase Failed: Invalid Name"),
+    // The amount to buy was zero or less
+    INVALID_AMOUNT("Purchase Failed: Invalid Amount"),
+    AMOUNT_TOO_HIGH("Purchase Failed: Amount Too High"),
+    // The line itself was fine but another line failed, so nothing was sold
+    NOT_APPLIED("Purchase Failed: Basket Rejected"),
+    // The register threw an error, such as the sales journal failing to save,
+    // so the purchase may or may not have been made
+    REGISTER_ERROR("Purchase Failed: Register Error");
+
+    private final String msg; // The message shown on the register
+    PurchStatus(String m) { msg = m; }
+    // Retrieve the message for this status
+    public String getMsg() { return msg; }
+}
+
+class Basket {
+    private String names[] = new String[8]; // The product name of each line
+    private int amts[] = new int[8];        // The amount to buy of each line
+    private int size;                       // The number of lines in the basket
+
+    // Add a line to the basket, growing the arrays when full. A line with an
+    // amount below one fails with INVALID_AMOUNT when the basket is rung up.
+    public void add(String n, int c) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            amts = Arrays.copyOf(amts, size * 2);
+        }
+        names[size] = n;
+        amts[size] = c;
+        size++;
+    }
+    // Remove every line so the basket can be reused
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+    }
+    // Retrieve the number of lines
+    public int size() { return size; }
+    // Retrieve the product name of a given line
+    public String getName(int i) { return names[i]; }
+    // Retrieve the amount of a given line
+    public int getAmt(int i) { return amts[i]; }
+}
+
+class BasketReplay {
+    // Ring up every transaction in the given reader on the given register and
+    // return how many baskets succeeded and how many failed, in that order.
+    // Each line is a product name and an amount separated by a tab. A blank line
+    // ends a transaction, and lines starting with # are ignored. A line whose
+    // amount is missing, not a number or below one fails its own transaction
+    // with INVALID_AMOUNT, and the rest of the file is still rung up.
+    public static int[] Replay(Register reg, BufferedReader in) throws IOException {
+        int counts[] = new int[2];
+        Basket b = new Basket(); // Reused for every transaction
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("#"))
+                continue;
+            if (line.isEmpty()) { // End of a transaction
+                ringUp(reg, b, counts);
+                continue;
+            }
+            int tab = line.lastIndexOf('\t');
+            int c = 0; // Missing or not a number, which the basket turns away
+            if (tab < 0)
+                tab = line.length();
+            else {
+                try {
+                    c = Integer.parseInt(line.substring(tab + 1).trim());
+                } catch (NumberFormatException e) {
+                    // Left at 0
+                }
+            }
+            b.add(line.substring(0, tab), c);
+        }
+        ringUp(reg, b, counts); // The last transaction may not end with a blank
+        return counts;
+    }
+    // Purchase a filled basket, count the result and empty it
+    private static void ringUp(Register reg, Basket b, int counts[]) {
+        if (b.size() == 0)
+            return;
+        PurchStatus res[] = reg.Purchase(b);
+        counts[res[0] == PurchStatus.SUCCESS ? 0 : 1]++;
+        b.clear();
+    }
+    // Replay a transaction file, printing the counts and the rate
+    public static void main(String args[]) throws IOException {
+        Register reg = new Register(0f);
+        long start = System.nanoTime();
+        int counts[];
+        try (BufferedReader in = new BufferedReader(new FileReader(args[0]))) {
+            counts = Replay(reg, in);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d succeeded, %d failed, %.0f transactions/s%n",
+                          counts[0], counts[1], (counts[0] + counts[1]) / secs);
+    }
+}
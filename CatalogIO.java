@@ -0,0 +1,256 @@
+/*************************************************************************************
+ * CatalogIO
+ * -----------------------------------------------------------------------------------
+ * Loads and saves the product catalog, so products and prices can change without
+ * recompiling. Two formats are read and written:
+ *  CSV    : One product per line as name, price in dollars and amount on shelf, with
+ *           an optional header line. A name holding a comma or quote is put in
+ *           quotes, with each quote in it doubled.
+ *  Binary : The columns of ProdStore as they are in memory (see ProdStore). Loading
+ *           one maps the file instead of reading it, and the low stock index
+ *           fills in a stripe at a time as it is used, so loading takes the same
+ *           time for five products or a million. The name index is still built
+ *           whole, by the first lookup of a name.
+ * The CSV reader works on the raw bytes a buffer at a time and reuses one name
+ * buffer, turning prices straight into cents without making a String or a float.
+ * When the whole catalog is loaded the name bytes go straight into the store.
+ * Either format can also be applied as an update (upsert): a product already in
+ * the list gets the price and amount from the file, and any other is added. The
+ * new products are collected while the file is read and added together at the
+ * end, so the product locks are taken once however many there are. With a sales
+ * journal the catalog is then saved to the data folder, so the changes are there
+ * on the next start.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                         // For the streams
+import java.nio.*;                        // For ByteBuffer
+import java.nio.channels.*;               // For FileChannel
+import java.nio.charset.StandardCharsets; // For decoding names
+import java.nio.file.*;                   // For Path
+
+class CatalogIO {
+    private CatalogIO() {} // Only static methods
+
+    // Reads the lines of a CSV catalog one at a time. After next returns true
+    // the fields of the line are in name, nameLen, cents and amt.
+    static final class CsvReader {
+        private final InputStream in;
+        private final byte buf[] = new byte[1 << 16]; // Bytes read, not yet parsed
+        private int pos, lim;
+        byte name[] = new byte[256]; // The UTF-8 bytes of the name
+        int nameLen;
+        long cents;                  // The price in cents
+        int amt;                     // The amount on shelf
+        private int line;            // Line number, for error messages
+
+        CsvReader(InputStream i) { in = i; }
+
+        // Return the next byte, or -1 at the end
+        private int read() throws IOException {
+            if (pos == lim) {
+                lim = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (lim <= 0) {
+                    lim = 0;
+                    return -1;
+                }
+            }
+            return buf[pos++] & 0xff;
+        }
+        private IOException error(String what) {
+            return new IOException("Catalog line " + line + ": " + what);
+        }
+        private void putName(int ch) {
+            if (nameLen == name.length)
+                name = java.util.Arrays.copyOf(name, nameLen * 2);
+            name[nameLen++] = (byte) ch;
+        }
+        // Read the next product, skipping blank lines and a header line.
+        // Returns false at the end.
+        boolean next() throws IOException {
+            while (true) {
+                int ch = read();
+                if (ch < 0)
+                    return false;
+                line++;
+                if (ch == '\r')
+                    ch = read();
+                if (ch == '\n')
+                    continue; // A blank line
+                nameLen = 0;
+                if (ch == '"') { // A quoted name, two quotes stand for one
+                    while (true) {
+                        ch = read();
+                        if (ch < 0)
+                            throw error("quote is never closed");
+                        if (ch == '"' && (ch = read()) != '"')
+                            break;
+                        putName(ch);
+                    }
+                } else {
+                    for (; ch >= 0 && ch != ',' && ch != '\n'; ch = read())
+                        putName(ch);
+                }
+                if (line == 1 && nameLen == 4 && new String(name, 0, 4,
+                        StandardCharsets.US_ASCII).equalsIgnoreCase("name")) {
+                    while (ch >= 0 && ch != '\n') // Skip the header line
+                        ch = read();
+                    continue;
+                }
+                if (ch != ',')
+                    throw error("expected name,price,amount");
+                cents = price();
+                amt = amount();
+                return true;
+            }
+        }
+        // Read a price in dollars, such as 50.78 or $3, as cents
+        private long price() throws IOException {
+            long c = 0;
+            int digits = 0, decimals = -1; // -1 until the point is seen
+            int ch = read();
+            if (ch == '$')
+                ch = read();
+            for (; ch != ','; ch = read()) {
+                if (ch >= '0' && ch <= '9' && digits < 15 && decimals < 2) {
+                    c = c * 10 + (ch - '0');
+                    digits++;
+                    if (decimals >= 0)
+                        decimals++;
+                } else if (ch == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    throw error("bad price");
+                }
+            }
+            if (digits == 0)
+                throw error("bad price");
+            for (int d = Math.max(decimals, 0); d < 2; d++) // Up to whole cents
+                c *= 10;
+            if (c > ProdStore.MAX_PRICE_CENTS)
+                throw error("bad price");
+            return c;
+        }
+        // Read the amount on shelf, the last field of the line
+        private int amount() throws IOException {
+            long a = 0;
+            int digits = 0;
+            int ch = read();
+            for (; ch >= 0 && ch != '\n' && ch != '\r'; ch = read()) {
+                if (ch < '0' || ch > '9' || digits == 10)
+                    throw error("bad amount");
+                a = a * 10 + (ch - '0');
+                digits++;
+            }
+            if (ch == '\r' && read() != '\n')
+                throw error("bad amount");
+            if (digits == 0 || a > Integer.MAX_VALUE)
+                throw error("bad amount");
+            return (int) a;
+        }
+        // Retrieve the name as a String
+        String getName() { return new String(name, 0, nameLen, StandardCharsets.UTF_8); }
+    }
+
+    // Return true if a file is a binary catalog, false if it is taken as CSV
+    static boolean isBinary(Path p) throws IOException {
+        try (FileChannel in = FileChannel.open(p, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (b.hasRemaining() && in.read(b) >= 0) {
+                // Read the first four bytes
+            }
+            return b.position() == 4 && b.getInt(0) == ProdStore.MAGIC;
+        }
+    }
+
+    // Replace every product with the ones in a catalog file, binary or CSV, and
+    // return how many there are. Call it before any sales, such as at startup.
+    // The file is read into a new store first, so a bad file changes nothing.
+    public static int load(Path p) throws IOException {
+        ProdStore s = new ProdStore(ProdList.store.isOffHeap());
+        if (isBinary(p)) {
+            s.map(p);
+        } else {
+            try (InputStream in = Files.newInputStream(p)) {
+                CsvReader r = new CsvReader(in);
+                while (r.next())
+                    s.add(r.name, 0, r.nameLen, r.cents, r.amt);
+            }
+        }
+        return ProdList.replaceAll(s);
+    }
+
+    // Apply a catalog file, binary or CSV, as an update: products already in the
+    // list get the file's price and amount on shelf, the others are added.
+    // Returns the number of products updated and the number added.
+    public static int[] upsert(Path p) throws IOException {
+        Upsert u = new Upsert();
+        if (isBinary(p)) {
+            ProdStore s = new ProdStore(false);
+            s.map(p);
+            for (int i = 0; i < s.size(); i++)
+                u.apply(s.getName(i), s.getPriceCents(i), s.getAmtOnShelf(i));
+        } else {
+            try (InputStream in = Files.newInputStream(p)) {
+                CsvReader r = new CsvReader(in);
+                while (r.next())
+                    u.apply(r.getName(), r.cents, r.amt);
+            }
+        }
+        if (u.added.size() > 0)
+            ProdList.addAll(u.added);
+        if (ProdList.journal != null) // Keep the changes for the next start
+            ProdList.journal.saveCatalog();
+        return u.n;
+    }
+    // One update in progress: products in the list are set as they are read,
+    // new ones wait in a store of their own to be added together
+    private static final class Upsert {
+        final int n[] = new int[2];                    // Updated, added
+        final ProdStore added = new ProdStore(false);  // New products, in order
+        final java.util.Map<String, Integer> addedAt = new java.util.HashMap<>();
+        // Update or add one product, counting which it was
+        void apply(String name, long cents, int amt) {
+            int i = Register.index.LinearSearch(name); // The index's hash map
+            if (i >= 0) {
+                ProdList.setProd(i, cents, amt);
+                n[0]++;
+                return;
+            }
+            Integer a = addedAt.get(name);
+            if (a != null) { // Named twice in the file, the last line wins
+                added.setPriceCents(a, cents);
+                added.setAmtOnShelf(a, amt);
+                n[0]++;
+                return;
+            }
+            addedAt.put(name, added.add(name, cents, amt));
+            n[1]++;
+        }
+    }
+
+    // Write every product to a CSV file with a header line
+    public static void saveCsv(Path p) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(p), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(256); // Reused for every line
+            out.write("name,price,amount\n");
+            int s = ProdList.getListSize();
+            for (int i = 0; i < s; i++) {
+                sb.setLength(0);
+                String n = ProdList.getName(i);
+                if (n.indexOf(',') >= 0 || n.indexOf('"') >= 0 || n.indexOf('\n') >= 0)
+                    sb.append('"').append(n.replace("\"", "\"\"")).append('"');
+                else
+                    sb.append(n);
+                sb.append(',');
+                Money.append(sb, ProdList.getPriceCents(i));
+                sb.append(',').append(ProdList.getAmtOnShelf(i)).append('\n');
+                out.append(sb);
+            }
+        }
+    }
+    // Write every product to a binary catalog file
+    public static void saveBinary(Path p) throws IOException { ProdList.store.save(p); }
+}
@@ -0,0 +1,128 @@
+/*************************************************************************************
+ * DayLedger
+ * -----------------------------------------------------------------------------------
+ * The sales of one day: how many of each product were sold and the money each made.
+ * The current day's ledger is ProdList.today. Switching to the next day puts a new,
+ * empty ledger in its place, instead of zeroing the daily count of every product,
+ * so a day switch costs the same however large the catalog is. Once every purchase
+ * which picked up the old ledger has finished, the old ledger is sealed and never
+ * changes again, so it can be read as the record of that day.
+ * The daily counts and money are kept in pages of 4096 products which are only
+ * created when a product in them sells, so a new ledger costs almost nothing to
+ * create.
+ * Selling through a ledger must happen while holding the product's lock.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.Arrays;                   // For growing the page directory
+import java.util.concurrent.atomic.*;      // For LongAdder
+
+class DayLedger {
+    static final int PAGE_BITS = 12;                 // 4096 products per page
+    static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private final int day;                  // The day this ledger records
+    private volatile int pages[][] = new int[16][]; // Daily counts, null if unsold
+    // Money made by each product this day in cents, paged the same way
+    private volatile long centPages[][] = new long[16][];
+    private final LongAdder cents = new LongAdder(); // Money made this day
+    private volatile boolean sealed;        // Set once the day can not change
+
+    DayLedger(int d) { day = d; }
+
+    // Retrieve the day this ledger records
+    public int getDay() { return day; }
+    // Retrieve true if the day is over and the ledger can no longer change
+    public boolean isSealed() { return sealed; }
+    // Retrieve the money made this day in cents
+    public long getCents() { return cents.sum(); }
+    // Retrieve the number of a product sold this day
+    public int getSold(int i) {
+        int p[][] = pages;
+        int pg = i >>> PAGE_BITS;
+        if (pg >= p.length || p[pg] == null)
+            return 0;
+        return p[pg][i & PAGE_MASK];
+    }
+    // Retrieve the money made by a product this day in cents
+    public long getCents(int i) {
+        long p[][] = centPages;
+        int pg = i >>> PAGE_BITS;
+        if (pg >= p.length || p[pg] == null)
+            return 0;
+        return p[pg][i & PAGE_MASK];
+    }
+    // Return the first product at or after the given index which sold this day,
+    // or -1. Pages with no sales are skipped whole.
+    public int nextSold(int from) {
+        int p[][] = pages;
+        for (int pg = from >>> PAGE_BITS; pg < p.length; pg++) {
+            if (p[pg] == null)
+                continue;
+            int start = pg == from >>> PAGE_BITS ? from & PAGE_MASK : 0;
+            for (int j = start; j <= PAGE_MASK; j++)
+                if (p[pg][j] != 0)
+                    return pg << PAGE_BITS | j;
+        }
+        return -1;
+    }
+
+    // Record a sale of c units of a product at the given price in cents. The
+    // caller holds the product's lock.
+    public void sell(int i, int c, long unitCents) {
+        if (sealed)
+            throw new IllegalStateException("Day " + day + " is already over");
+        int pg = i >>> PAGE_BITS;
+        page(pg)[i & PAGE_MASK] += c;
+        centPage(pg)[i & PAGE_MASK] += c * unitCents;
+        cents.add(c * unitCents);
+    }
+    // Set the number of a product sold and the money it made, used when loading
+    // a saved day. The caller holds the product's lock.
+    public void setSold(int i, int v, long c) {
+        page(i >>> PAGE_BITS)[i & PAGE_MASK] = v;
+        centPage(i >>> PAGE_BITS)[i & PAGE_MASK] = c;
+    }
+    public void setCents(long v) {
+        cents.reset();
+        cents.add(v);
+    }
+    // Mark the day as over. Only call this once no purchase can still be
+    // selling through the ledger.
+    void seal() { sealed = true; }
+
+    // Return a page of counts, creating it if needed
+    private int[] page(int pg) {
+        int p[][] = pages;
+        if (pg < p.length && p[pg] != null)
+            return p[pg];
+        return newPage(pg);
+    }
+    // Return a page of money, creating it if needed
+    private long[] centPage(int pg) {
+        long p[][] = centPages;
+        if (pg < p.length && p[pg] != null)
+            return p[pg];
+        return newCentPage(pg);
+    }
+    // Create a page, growing the directory if needed. Pages are never replaced,
+    // so a thread holding an older directory still finds the same pages.
+    private synchronized int[] newPage(int pg) {
+        int p[][] = pages;
+        if (pg >= p.length)
+            p = Arrays.copyOf(p, Math.max(p.length * 2, pg + 1));
+        if (p[pg] == null)
+            p[pg] = new int[PAGE_MASK + 1];
+        pages = p; // Publish the page to threads which read without the lock
+        return p[pg];
+    }
+    private synchronized long[] newCentPage(int pg) {
+        long p[][] = centPages;
+        if (pg >= p.length)
+            p = Arrays.copyOf(p, Math.max(p.length * 2, pg + 1));
+        if (p[pg] == null)
+            p[pg] = new long[PAGE_MASK + 1];
+        centPages = p;
+        return p[pg];
+    }
+}
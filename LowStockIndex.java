@@ -0,0 +1,189 @@
+/*************************************************************************************
+ * LowStockIndex
+ * -----------------------------------------------------------------------------------
+ * Keeps the products with a small amount on shelf in buckets, one bucket for each
+ * amount from 0 to MAX_AMT. Each bucket is a linked list threaded through two int
+ * arrays, so moving a product to another bucket after a sale or a restock costs
+ * the same no matter how large the catalog is. Asking for every product at or
+ * below a refill threshold only visits the buckets up to the threshold, so it costs
+ * about as much as the number of products it returns. Products above MAX_AMT are
+ * not in any bucket since no threshold can reach them.
+ * The buckets are split into stripes the same way as the product locks, and each
+ * stripe is guarded by its product lock, which a sale holds already. So a sale
+ * leaving few units only touches its own stripe and registers selling under
+ * different locks never wait on the index.
+ * A stripe puts products it has not seen yet into their buckets the first time it
+ * is used, so loading or recovering a catalog does not have to visit every product.
+ * Listeners are told whenever a product's amount changes while it is in a bucket or
+ * moving into or out of one, so the refill list can stay up to date on its own.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.*;         // For Arrays and the listener list
+import java.util.concurrent.*; // For CopyOnWriteArrayList
+
+// Implemented by anything which wants to hear about low stock changes
+interface LowStockListener {
+    // Called after the product at the given index moved to a new amount. The
+    // old amount is NONE if the product was above MAX_AMT or new to the index.
+    // This runs on the thread which changed the amount, while it holds the
+    // product's lock, so it should only note the change and return.
+    public void lowStockChanged(int indx, int oldAmt, int newAmt);
+}
+
+class LowStockIndex {
+    static final int MAX_AMT = 63; // The largest amount which gets a bucket
+    static final int NONE = -1;    // Marks the end of a list or no bucket
+    // The index is split the same way as the product locks, so the products
+    // guarded by one lock have their own buckets and that lock guards them too
+    private static final int STRIPES = ProdList.STRIPES;
+    private static final int SHIFT = Integer.numberOfTrailingZeros(STRIPES);
+
+    // The buckets of the products guarded by one lock. A product is kept by its
+    // place among them, its index / STRIPES, so the arrays stay small.
+    private static final class Stripe {
+        final int head[] = new int[MAX_AMT + 1]; // First product per bucket
+        int next[] = new int[4];   // The next product in the same bucket
+        int prev[] = new int[4];   // The previous product in the same bucket
+        int bucket[] = new int[4]; // The bucket of each product, or NONE
+        int indexed;               // Number of products known to the stripe
+
+        Stripe() { Arrays.fill(head, NONE); }
+
+        // Make room for the next product, growing the arrays when full
+        void addNew() {
+            if (indexed == bucket.length) {
+                int n = bucket.length * 2;
+                next = Arrays.copyOf(next, n);
+                prev = Arrays.copyOf(prev, n);
+                bucket = Arrays.copyOf(bucket, n);
+            }
+            bucket[indexed] = NONE;
+            indexed++;
+        }
+        // Take a product out of its bucket
+        void unlink(int p) {
+            int b = bucket[p];
+            if (b == NONE)
+                return;
+            if (prev[p] == NONE)
+                head[b] = next[p];
+            else
+                next[prev[p]] = next[p];
+            if (next[p] != NONE)
+                prev[next[p]] = prev[p];
+            bucket[p] = NONE;
+        }
+        // Put a product at the front of a bucket
+        void link(int p, int b) {
+            bucket[p] = b;
+            if (b == NONE)
+                return;
+            prev[p] = NONE;
+            next[p] = head[b];
+            if (head[b] != NONE)
+                prev[head[b]] = p;
+            head[b] = p;
+        }
+    }
+
+    private final Stripe stripes[] = new Stripe[STRIPES];
+    private final List<LowStockListener> listeners = new CopyOnWriteArrayList<>();
+
+    LowStockIndex() {
+        for (int s = 0; s < STRIPES; s++)
+            stripes[s] = new Stripe();
+    }
+
+    // Tell the index a product was sold. A sale only lowers the amount, so when
+    // the new amount is above every bucket the product was not in one before
+    // either and the index is left alone.
+    public void sold(int indx) {
+        if (ProdList.getAmtOnShelf(indx) <= MAX_AMT)
+            update(indx);
+    }
+    // Add a listener to be told about changes
+    public void addListener(LowStockListener l) { listeners.add(l); }
+    // Remove a listener
+    public void removeListener(LowStockListener l) { listeners.remove(l); }
+
+    // Move the product at the given index into the bucket of its current amount
+    // on shelf. Call this after anything changes the amount, while still holding
+    // the product's lock: it guards the product's stripe of the index, so
+    // registers selling under other locks never wait here.
+    public void update(int indx) {
+        int s = indx & (STRIPES - 1);
+        Stripe st = stripes[s];
+        int p = indx >>> SHIFT;
+        catchUp(st, s, p + 1);
+        place(st, p, indx);
+    }
+    // Put the products of a stripe the index has not seen yet, up to the given
+    // place, into the buckets of their amounts. Call it holding the stripe's lock.
+    private void catchUp(Stripe st, int s, int upTo) {
+        while (st.indexed < upTo) {
+            int p = st.indexed;
+            st.addNew();
+            place(st, p, p << SHIFT | s);
+        }
+    }
+    // Move a product the stripe has seen into the bucket of its amount
+    private void place(Stripe st, int p, int indx) {
+        int amt = ProdList.getAmtOnShelf(indx);
+        int old = st.bucket[p];
+        int to = amt >= 0 && amt <= MAX_AMT ? amt : NONE;
+        if (to == old)
+            return;
+        st.unlink(p);
+        st.link(p, to);
+        for (LowStockListener l : listeners) // Tell listeners about the move
+            l.lowStockChanged(indx, old, amt);
+    }
+    // Forget every product, used when the whole catalog is replaced or its
+    // amounts are recovered. Products come back when their stripe is next used.
+    public void clear() {
+        for (int s = 0; s < STRIPES; s++) {
+            synchronized (ProdList.lockFor(s)) {
+                Arrays.fill(stripes[s].head, NONE);
+                stripes[s].indexed = 0;
+            }
+        }
+    }
+
+    // Return the products with an amount on shelf at or below the threshold,
+    // lowest amount first since those need a refill the most. Each stripe is
+    // read under its product lock, one at a time, and the products found are
+    // then put in order of amount by counting them per bucket.
+    public int[] query(int threshold) {
+        int t = Math.min(threshold, MAX_AMT);
+        if (t < 0)
+            return new int[0];
+        int count[] = new int[t + 2]; // Products per bucket, then where each starts
+        int found[] = new int[16], amts[] = new int[16];
+        int n = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            Stripe st = stripes[s];
+            synchronized (ProdList.lockFor(s)) {
+                int size = ProdList.getListSize(); // Products this stripe guards
+                catchUp(st, s, size > s ? ((size - 1 - s) >>> SHIFT) + 1 : 0);
+                for (int b = 0; b <= t; b++) {
+                    for (int p = st.head[b]; p != NONE; p = st.next[p]) {
+                        if (n == found.length) {
+                            found = Arrays.copyOf(found, n * 2);
+                            amts = Arrays.copyOf(amts, n * 2);
+                        }
+                        found[n] = p << SHIFT | s;
+                        amts[n++] = b;
+                        count[b + 1]++;
+                    }
+                }
+            }
+        }
+        for (int b = 0; b <= t; b++)
+            count[b + 1] += count[b];
+        int r[] = new int[n];
+        for (int k = 0; k < n; k++)
+            r[count[amts[k]]++] = found[k];
+        return r;
+    }
+}
@@ -0,0 +1,54 @@
+/*************************************************************************************
+ * Money
+ * -----------------------------------------------------------------------------------
+ * All money in the program is kept as a long count of cents, so adding up millions
+ * of sales never drifts the way float dollars do. This class turns cents into the
+ * "1234.56" text shown in the labels and tables. append writes the digits straight
+ * into a StringBuilder without creating any objects. format keeps a small cache of
+ * recently formatted amounts, so repainting a table or label with an amount that
+ * has not changed reuses the same String.
+ ************************************************************************************/
+
+package petsupplymanager;
+
+class Money {
+    static final int CACHE_SIZE = 1024;    // Slots in the format cache, power of two
+    // A formatted amount. The fields are final so a thread reading a slot
+    // without a lock always sees cents and text which belong together.
+    private static final class Entry {
+        final long cents;
+        final String text;
+        Entry(long c, String t) { cents = c; text = t; }
+    }
+    // Recently formatted amounts, slot chosen by the cents
+    private static final Entry cache[] = new Entry[CACHE_SIZE];
+
+    private Money() {} // Only static methods
+
+    // Write cents as dollars with two decimals, such as 1234.56 or -0.05
+    public static StringBuilder append(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            if (cents == Long.MIN_VALUE) // Can not be negated, never a real amount
+                return sb.append(-(cents / 100)).append(".08");
+            cents = -cents;
+        }
+        long frac = cents % 100;
+        sb.append(cents / 100).append('.');
+        if (frac < 10)
+            sb.append('0');
+        return sb.append(frac);
+    }
+    // Return cents as dollars with two decimals, from the cache when possible
+    public static String format(long cents) {
+        int slot = (int) (cents ^ (cents >>> 32)) & (CACHE_SIZE - 1);
+        Entry e = cache[slot];
+        if (e == null || e.cents != cents) { // Not cached, replace the slot
+            e = new Entry(cents, append(new StringBuilder(16), cents).toString());
+            cache[slot] = e;
+        }
+        return e.text;
+    }
+    // Return the cents of a dollar amount such as 12.5, rounded to the nearest cent
+    public static long toCents(double dollars) { return Math.round(dollars * 100); }
+}
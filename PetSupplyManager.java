@@ -27,18 +27,26 @@
  *   lowAmtSldr : A slider to select the low amount to check for
  *   jbtnNxtDy  : A button to increment the day count and reset daily values
  *   jbtnUpd    : A button to update the JTables to the most recent values in the list
+ *   jbtnRestk  : A button to restock the products the reorder plan lists
  *   jbtnReg    : A button to switch to the register window
+ *   histFld    : Text field for a product name to look up in the sales history
+ *   fromSpn, toSpn : Spinners to select the first and last day to look up
+ *   jbtnHist   : A button to look up the sales history of the days selected
  * OUTPUT
  *  Register
  *   purchLab : A label which displays if the purchase was successful/why it failed
  *   amtLab   : A label which displays the current amount selected on slider
  *   dlyMoneyLab : A label which displays the money earned on the current day
+ *   queueLab : A label which displays how many purchases are waiting
  *  Supply Summary
  *   refPriTbl   : A table which displays a list of products that have refill priority
  *   prodListTbl : A table which displays the list of products with all info.
  *   lowAmtLab   : A label which displays the current amount selected on slider
  *   dayLab      : A label which displays the current day
  *   ttlMoneyLab : A label which displays the total amount of money made
+ *   restkLab    : A label which displays how many products were restocked
+ *   histLab     : A label which displays a product's sales over the days selected
+ *   histTbl     : A table which displays the top sellers over the days selected
  ************************************************************************************/
 
 package petsupplymanager;
@@ -46,6 +54,9 @@ import java.awt.*;          // For flow layout in swing
 import java.awt.event.*;    // Necessary for ActionListener
 import javax.swing.*;       // Swing GUI
 import javax.swing.event.*; // Necessary for ChangeListener
+import javax.swing.table.*; // For the top sellers table model
+import java.util.Arrays;     // For sorting basket lines
+import java.util.concurrent.atomic.*; // For the queued update flags
 
 
 /**
@@ -59,13 +70,25 @@ interface SearchInt {
     public int LinearSearch(String n); 
 }
 
+// Interface for anything which needs to know when a product's values change
+interface ProdListener {
+    // Called on the thread which changed the product, while it holds the
+    // product's lock, so this should only note the change and return
+    public void prodChanged(int indx);
+    // Called once after the products from first up to but not including end
+    // were added together, while every lock is held. By default each one is
+    // passed to prodChanged.
+    public default void prodsAdded(int first, int end) {
+        for (int i = first; i < end; i++)
+            prodChanged(i);
+    }
+}
+
 // A class which describes an object holding stats on an individual item
 class ProdList {
-    // Protected because they need to be dirrectly modified by subclasses,
-    // static because they need to stay the same across separate objects
-    // The name of the item, important for searching
-    protected static String name[] = { "Blue Buffalo Wilderness Natural Adult "
-                             + "High Protein Grain Free Chicken Dry Dog Food", 
+    // The products the list starts with
+    private static final String initName[] = { "Blue Buffalo Wilderness Natural "
+                             + "Adult High Protein Grain Free Chicken Dry Dog Food", 
                              "CANIDAE Beef & Oatmeal Dry Dog Food",
                              "Merrick Full Source Raw-Coated Kibble Real Salmon"
                              + " & Whitefish with Healthy Grains Dry Dog Food", 
@@ -74,107 +97,567 @@ class ProdList {
                              + "Dried Raw Pieces", 
                              "Hill's Science Diet Adult Light Large Breed with "
                              + "Chicken Meal & Barley Dry Dog Food"};
-    // The price of the item
-    protected static float price[] = { 50.78f, 37.49f, 74.99f, 51.99f, 37.99f }; 
-    // Amount on shelfs
-    protected static int amtOnShelf[] = { 15, 9, 18, 5, 12 }; 
-    // Number sold in the current day
-    protected static int numSoldDay[] = { 0, 0, 0, 0, 0 }; 
-    // Total sold over all the days
-    protected static int numSoldTot[] = { 0, 0, 0, 0, 0 }; 
+    // The starting price of each product in cents
+    private static final long initPrice[] = { 5078, 3749, 7499, 5199, 3799 }; 
+    // The starting amount on shelfs of each product
+    private static final int initAmt[] = { 15, 9, 18, 5, 12 }; 
+    // Number of locks guarding the per-product values, must be a power of two
+    protected static final int STRIPES = 64;
+    // The product at index i is guarded by lock i % STRIPES, so registers selling
+    // different products rarely wait on each other
+    protected static final Object locks[] = new Object[STRIPES];
+    // Protected because it needs to be dirrectly modified by subclasses, static
+    // because it needs to stay the same across separate objects. It holds the
+    // name, price, amount on shelf and total sold of every product in columns.
+    // Run with -Dpetsupply.offheap=true to keep the columns off the Java heap.
+    protected static final ProdStore store =
+                                new ProdStore(Boolean.getBoolean("petsupply.offheap"));
+    // The products with a low amount on shelf, kept up to date on every change
+    protected static final LowStockIndex lowStock = new LowStockIndex();
+    // The number of each product sold and the money made on the current day.
+    // Switching day swaps in a new ledger instead of zeroing this one.
+    protected static volatile DayLedger today = new DayLedger(1);
+    // Number of finished days kept as ledgers, oldest first
+    static final int KEEP_DAYS = 7;
+    private static final java.util.ArrayDeque<DayLedger> pastDays =
+                                                    new java.util.ArrayDeque<>();
+    // The sales of every finished day, for queries over ranges of days
+    protected static final SalesHistory history = new SalesHistory();
+    // The reorder points of every product and the list of what to reorder
+    protected static final ReorderPlanner planner = new ReorderPlanner();
+    // Counts and latencies of purchases, lookups and day switches
+    protected static final RegisterMetrics metrics = new RegisterMetrics();
+    // Told about every change to a product, such as the product table
+    private static final java.util.List<ProdListener> listeners =
+                            new java.util.concurrent.CopyOnWriteArrayList<>();
+    static {
+        for (int i = 0; i < STRIPES; i++)
+            locks[i] = new Object();
+        for (int i = 0; i < initName.length; i++)
+            lowStock.update(store.add(initName[i], initPrice[i], initAmt[i]));
+    }
+    // Method to return the lock guarding the product at a given index
+    protected static Object lockFor(int i) { return locks[i & (STRIPES - 1)]; }
+    // The journal purchases and day switches are saved to, null when the
+    // program was started without a data directory
+    protected static SalesJournal journal;
+    // Method to start what every kind of store shares, from its arguments: show
+    // the register metrics through JMX and print them every
+    // petsupply.metrics.dump seconds, open the sales journal in the data
+    // directory unless it is null or "-", and read the catalog file if one is
+    // given. With a journal the catalog updates the saved products, without one
+    // it replaces the built in list. Returns the journal, or null.
+    static SalesJournal open(String data, String catalog)
+                                                    throws java.io.IOException {
+        metrics.register();
+        long dump = Long.getLong("petsupply.metrics.dump", 0);
+        if (dump > 0)
+            metrics.startDump(dump, System.out);
+        SalesJournal j = null;
+        if (data != null && !data.equals("-")) {
+            j = new SalesJournal(java.nio.file.Paths.get(data));
+            journal = j;
+        }
+        if (catalog != null) {
+            java.nio.file.Path cat = java.nio.file.Paths.get(catalog);
+            if (j != null)
+                CatalogIO.upsert(cat);
+            else
+                CatalogIO.load(cat);
+        }
+        return j;
+    }
     // Method to return name value at a given index
-    public static String getName(int i) { return name[i]; }
+    public static String getName(int i) { return store.getName(i); }
     // Method to return price value at a given index
-    public static float getPrice(int i) { return price[i]; }
+    public static float getPrice(int i) { return store.getPriceCents(i) / 100f; }
+    // Method to return price value in cents at a given index
+    public static long getPriceCents(int i) { return store.getPriceCents(i); }
     // Method to return amount on shelf at a given index
-    public static int getAmtOnShelf(int i) { return amtOnShelf[i]; }
+    public static int getAmtOnShelf(int i) { return store.getAmtOnShelf(i); }
     // Method to return number of product sold on current day at a given index
-    public static int getNumSoldDay(int i) { return numSoldDay[i]; }
+    public static int getNumSoldDay(int i) { return today.getSold(i); }
     // Method to return total number of product sold at a given index
-    public static int getNumSoldTot(int i) { return numSoldTot[i]; }
+    public static int getNumSoldTot(int i) { return store.getNumSoldTot(i); }
+    // Method to return the total money made by the product at a given index in
+    // cents, counted at the price of each sale
+    public static long getRevenue(int i) { return store.getRevTot(i); }
     // Method to return list size
-    public static int getListSize() { return name.length; }
+    public static int getListSize() { return store.size(); }
+    // Method to return the sealed ledger of a finished day, or null if that day
+    // is not one of the last KEEP_DAYS days
+    public static synchronized DayLedger getPastDay(int d) {
+        for (DayLedger l : pastDays)
+            if (l.getDay() == d)
+                return l;
+        return null;
+    }
+    // Method to finish a day once no purchase can still be selling through its
+    // ledger: seal it, keep it with the recent days and add it to the history
+    protected static void endDay(DayLedger l) {
+        l.seal(); // The day can no longer change
+        synchronized (ProdList.class) {
+            if (pastDays.size() == KEEP_DAYS) // Drop the oldest day
+                pastDays.removeFirst();
+            pastDays.addLast(l);
+        }
+        try {
+            history.addDay(l);
+        } catch (java.io.IOException e) {
+            // Not fatal, the day is still in the history until the program ends
+            System.err.println("Saving sales history failed: " + e);
+        }
+    }
+    // Method to wait for every purchase already holding a product lock. Each
+    // lock is taken and let go in turn, so registers only ever wait on one.
+    protected static void passAllLocks() {
+        for (Object l : locks) {
+            synchronized (l) {
+                // Nothing to do, getting the lock is enough
+            }
+        }
+    }
+    // Method to wait until every purchase and restock saved to the journal so
+    // far is on disk, so one is never reported done and then lost in a crash.
+    // Call it after letting go of the product locks.
+    protected static void saved() {
+        SalesJournal j = journal;
+        if (j != null)
+            j.sync();
+    }
+    // Method to add a listener which is told about every product change
+    public static void addListener(ProdListener l) { listeners.add(l); }
+    // Method to tell the listeners a product changed
+    protected static void changed(int i) {
+        for (ProdListener l : listeners)
+            l.prodChanged(i);
+    }
+    // Method to add a new product to the end of the list and return its index.
+    // Every lock is held while the store grows so no purchase writes to the old
+    // columns while they are copied.
+    public static int addProd(String n, long cents, int amt) {
+        checkPrice(cents);
+        return addLocked(0, n, cents, amt);
+    }
+    // Take the locks one at a time, then add the product
+    private static int addLocked(int k, String n, long cents, int amt) {
+        if (k == STRIPES) {
+            int i = store.add(n, cents, amt);
+            lowStock.update(i);
+            changed(i);
+            return i;
+        }
+        synchronized (locks[k]) {
+            return addLocked(k + 1, n, cents, amt);
+        }
+    }
+    // Method to add every product of a store to the end of the list and return
+    // the index of the first, such as the new products of a catalog import.
+    // The locks are taken once for all of them and the listeners told once.
+    protected static int addAll(ProdStore s) {
+        for (int i = 0; i < s.size(); i++)
+            checkPrice(s.getPriceCents(i));
+        return addAllLocked(0, s);
+    }
+    // Take the locks one at a time, then add the products
+    private static int addAllLocked(int k, ProdStore s) {
+        if (k == STRIPES) {
+            int first = store.size();
+            for (int i = 0; i < s.size(); i++) {
+                int amt = s.getAmtOnShelf(i);
+                int j = store.add(s.getName(i), s.getPriceCents(i), amt);
+                if (amt <= LowStockIndex.MAX_AMT) // Others join no bucket
+                    lowStock.update(j);
+            }
+            for (ProdListener l : listeners)
+                l.prodsAdded(first, store.size());
+            return first;
+        }
+        synchronized (locks[k]) {
+            return addAllLocked(k + 1, s);
+        }
+    }
+    // Method to set the price in cents and the amount on shelf of the product
+    // at a given index, such as from a catalog import
+    protected static void setProd(int i, long cents, int amt) {
+        checkPrice(cents);
+        synchronized (lockFor(i)) {
+            store.setPriceCents(i, cents);
+            store.setAmtOnShelf(i, amt);
+            lowStock.update(i);
+            changed(i);
+        }
+    }
+    // Throw if a price is below 0 or above the highest a sale can ring up
+    private static void checkPrice(long cents) {
+        if (cents < 0 || cents > ProdStore.MAX_PRICE_CENTS)
+            throw new IllegalArgumentException("Price out of range: " + cents);
+    }
+    // Method to replace every product with the ones in a store a catalog was
+    // loaded into. Call it before any sales, such as at startup, since sales
+    // and days saved so far refer to products by their place in the list.
+    protected static int replaceAll(ProdStore s) {
+        return replaceLocked(0, s);
+    }
+    // Take the locks one at a time, then swap in the products
+    private static int replaceLocked(int k, ProdStore s) {
+        if (k == STRIPES) {
+            store.replace(s);
+            lowStock.clear();       // Each stripe fills in when next used
+            Register.index.clear(); // Indexed again on the next lookup
+            return store.size();
+        }
+        synchronized (locks[k]) {
+            return replaceLocked(k + 1, s);
+        }
+    }
 }
 
 class SupplySummary extends ProdList {
+    // Longest a day switch spends recomputing reorder points, in nanoseconds
+    static final long PLAN_BUDGET_NS = 20_000_000;
     private int lowAmt; // The low amount to check for with amount on shelf
-    // The total money earned since the list began recording each day
-    private float ttlMoney;
+    // The total money earned since the list began recording each day, in
+    // cents so it stays exact however many days are added up
+    private long ttlCents;
     private int day;    // The current day
     // Constructor
-    SupplySummary(int lAmt, float m, int d) {
+    SupplySummary(int lAmt, float m, int d) { this(lAmt, Money.toCents(m), d); }
+    // Constructor with the total money in cents
+    SupplySummary(int lAmt, long cents, int d) {
         lowAmt = lAmt;
-        ttlMoney = m;
+        ttlCents = cents;
         day = d;
+        if (today.getDay() != d) // Start the given day's ledger
+            today = new DayLedger(d);
     }
-    // Switch to next day
+    // Switch to next day. Registers keep selling while this runs: the new day's
+    // ledger is swapped in at once, and each purchase goes wholly to one day.
     public void SwitchDay() {
-        day++; // Increment day
-        ttlMoney += Register.getDlyMoney(); // Add daily money to total
-        Register.resetDlyMoney(); // Reset the daily money amount
-        // Set all daily values stored in ProdList to 0
-        for (int i = 0; i < ProdList.getListSize(); i++) {
-            numSoldDay[i] = 0;
+        long start = RegisterMetrics.now();
+        synchronized (SupplySummary.class) { // One switch at a time
+            DayLedger old = today;
+            // New purchases read today under their product lock, so from here
+            // on they go to the new day
+            today = new DayLedger(old.getDay() + 1);
+            // Wait for purchases which picked up the old day before the swap
+            passAllLocks();
+            endDay(old);
+            day = old.getDay() + 1; // Increment day
+            ttlCents += old.getCents(); // Add daily money to total
+            saveDaySwitch();
+        }
+        // Registers are selling in the new day already, so this can take its time
+        planner.recompute(PLAN_BUDGET_NS);
+        metrics.time(RegisterMetrics.SWITCH_DAY, start);
+    }
+    // Put c more units of the product at the given index on the shelf, such as
+    // when a delivery arrives. It will return if it was successful.
+    public String Restock(int indx, int c) {
+        String r = restock(indx, c);
+        saved(); // Report it only once the restock is on disk
+        return r;
+    }
+    // Restock without waiting for the journal
+    private String restock(int indx, int c) {
+        if (indx < 0 || indx >= getListSize())
+            return "Restock Failed: Invalid Name";
+        if (c <= 0)
+            return "Restock Failed: Invalid Amount";
+        synchronized (lockFor(indx)) {
+            if (store.getAmtOnShelf(indx) > Integer.MAX_VALUE - c)
+                return "Restock Failed: Amount Too High";
+            if (journal != null) // Save the restock before changing anything
+                journal.appendRestock(indx, c);
+            store.receive(indx, c);
+            lowStock.update(indx); // The amount went up, it may leave a bucket
+            changed(indx);
+        }
+        return "Restock Successful";
+    }
+    // Restock up to max products from the reorder plan with the amount planned
+    // for each, as if their orders all arrived. Returns how many were restocked.
+    public int ReceiveOrders(int max) {
+        int n = 0;
+        for (int i : planner.plan(max)) {
+            int c = planner.getOrderAmt(i);
+            if (c > 0 && restock(i, c).equals("Restock Successful"))
+                n++;
+        }
+        saved(); // Wait for the disk once for all of them
+        return n;
+    }
+    // Save the day switch to the journal, if there is one
+    private void saveDaySwitch() {
+        if (journal != null) { // Save the switch, then start a new journal
+            journal.appendDaySwitch(day, ttlCents);
+            try {
+                journal.Snapshot();
+            } catch (java.io.IOException e) {
+                // Not fatal, the day switch is already in the journal
+                System.err.println("Snapshot failed: " + e);
+            }
         }
     }
     // Retrieve day
     public int getDay() { return day; }
     // Retrieve total money
-    public float getTtlMoney() { return ttlMoney; }
+    public float getTtlMoney() { return ttlCents / 100f; }
+    // Retrieve total money in cents
+    public long getTtlCents() { return ttlCents; }
 }
 
 class Register extends ProdList implements SearchInt{
-    private static float dlyMoney; // Money earned on current day
+    // Hash index over the product names, shared by all registers
+    protected static final ProdIndex index = new ProdIndex();
     // Constructor for register, will initialize daily money
-    Register(float m) { dlyMoney = m; }
+    Register(float m) { this(Money.toCents(m)); }
+    // Constructor for register with the daily money in cents
+    Register(long cents) { today.setCents(cents); }
     // This method will return daily money earned
-    public static float getDlyMoney() { return dlyMoney; }
+    public static float getDlyMoney() { return today.getCents() / 100f; }
+    // This method will return daily money earned in cents
+    public static long getDlyCents() { return today.getCents(); }
     // This method will reset daily money earned
-    public static void resetDlyMoney() { dlyMoney = 0; }
+    public static void resetDlyMoney() { today.setCents(0); }
     // This method will search through the array of names and return the index
-    // if the name is found.
+    // if the name is found. The name is encoded once and compared with the
+    // stored bytes, so scanning makes no String per product.
     @Override
     public int LinearSearch(String n) { 
-        int s = name.length;       // Size of list
+        long start = RegisterMetrics.now();
+        int s = getListSize();     // Size of list
+        int found = -1;
+        byte b[] = n.getBytes(java.nio.charset.StandardCharsets.UTF_8);
         for(int i = 0; i < s; i++) // Check through entire list for the name
         { 
-            if(name[i].equals(n))  // Compare stored item names with given item name
-                return i; 
+            if(store.nameEquals(i, b)) // Compare stored item names with given item name
+            {
+                found = i;
+                break;
+            }
         } 
-        return -1; 
+        metrics.time(RegisterMetrics.LINEAR_SEARCH, start);
+        return found; 
     } 
+    // This method will look up a product through the index instead of scanning
+    // the list. An exact name is tried first, then the name ignoring case.
+    public int Lookup(String n) {
+        long start = RegisterMetrics.now();
+        int indx = find(n);
+        metrics.time(RegisterMetrics.LOOKUP, start);
+        return indx;
+    }
+    // Look up a product through the index without timing it
+    private int find(String n) {
+        int indx = index.LinearSearch(n);
+        if (indx < 0)
+            indx = index.FoldSearch(n);
+        return indx;
+    }
     // This method will recieve an item name and amount, then attempt to add the
-    // purchase to the item list. It will return if it was successful.
+    // purchase to the item list. It will return if it was successful. It is safe
+    // to call from many threads, the stock check and the update happen together
+    // while holding the product's lock so two registers can not oversell.
     public String Purchase(String n, int c) {
-        int indx = LinearSearch(n);
-        if (indx < 0) // Purchase will fail if name was not found
-            return "Purchase Failed: Invalid Name";
-        // If amount attempting to purchase is above the available amount
-        else if (c > amtOnShelf[indx])
-            return "Purchase Failed: Amount Too High";
-        else { // If nothing fails
-            amtOnShelf[indx] -= c; // Subtract amount purchased from shelf count
-            numSoldDay[indx] += c; // Add amount purchased to total sold per day
-            numSoldTot[indx] += c; // Add amount purchased to total sold
-            dlyMoney += c * price[indx];  // Add amount earned from purchase
-            return "Purchase Successful"; // return successful purchase message
+        long start = metrics.startPurchase();
+        int indx = find(n);
+        long looked = RegisterMetrics.lap(start);
+        // Purchase will fail if name was not found
+        PurchStatus st = indx < 0 ? PurchStatus.INVALID_NAME : sell(indx, c);
+        if (st == PurchStatus.SUCCESS)
+            saved(); // Report the purchase only once it is on disk
+        metrics.purchase(st, start, looked);
+        return st.getMsg(); // return the purchase message
+    }
+    // This method will purchase an amount of the product at a given index, for
+    // callers which looked the product up already, such as the store server
+    // which needs the index to pick a worker
+    public String Purchase(int indx, int c) {
+        long start = metrics.startPurchase();
+        PurchStatus st = indx < 0 || indx >= getListSize() ? PurchStatus.INVALID_NAME
+                                                           : sell(indx, c);
+        if (st == PurchStatus.SUCCESS)
+            saved();
+        metrics.purchase(st, start, start);
+        return st.getMsg();
+    }
+    // This method will purchase like Purchase(int, int) without waiting for the
+    // journal on this thread, so one worker can sell on while the disk catches
+    // up. done is given the purchase message once the sale is on disk, on the
+    // journal's thread, or null if the journal failed to save it.
+    public void Purchase(int indx, int c, java.util.function.Consumer<String> done) {
+        long start = metrics.startPurchase();
+        PurchStatus st = indx < 0 || indx >= getListSize() ? PurchStatus.INVALID_NAME
+                                                           : sell(indx, c);
+        metrics.purchase(st, start, start);
+        whenSaved(st, done);
+    }
+    // This method will purchase like Purchase(String, int) without waiting for
+    // the journal on this thread, answering done as Purchase(int, int, Consumer)
+    public void Purchase(String n, int c, java.util.function.Consumer<String> done) {
+        long start = metrics.startPurchase();
+        int indx = find(n);
+        long looked = RegisterMetrics.lap(start);
+        PurchStatus st = indx < 0 ? PurchStatus.INVALID_NAME : sell(indx, c);
+        metrics.purchase(st, start, looked);
+        whenSaved(st, done);
+    }
+    // Give done the message of a purchase once it is on disk, or null if the
+    // journal failed to save it
+    private static void whenSaved(PurchStatus st,
+                                  java.util.function.Consumer<String> done) {
+        SalesJournal j = journal;
+        if (st != PurchStatus.SUCCESS || j == null)
+            done.accept(st.getMsg());
+        else
+            j.whenForced(() -> done.accept(j.isFailed() ? null : st.getMsg()));
+    }
+    // Sell c of the product at a given index if there are enough on the shelf
+    private PurchStatus sell(int indx, int c) {
+        if (c <= 0) // Selling nothing or less would put stock back on the shelf
+            return PurchStatus.INVALID_AMOUNT;
+        synchronized (lockFor(indx)) {
+            // If amount attempting to purchase is above the available amount
+            if (c > store.getAmtOnShelf(indx))
+                return PurchStatus.AMOUNT_TOO_HIGH;
+            int unitCents = (int) store.getPriceCents(indx);
+            // The day is read under the lock, so a day switch either sees
+            // this purchase finished or it goes to the new day
+            DayLedger led = today;
+            if (journal != null) // Save the purchase before changing anything
+                journal.appendPurchase(led.getDay(), indx, c, unitCents);
+            // Subtract amount purchased from shelf count and add it to the
+            // total sold
+            store.sell(indx, c, unitCents);
+            // Add amount purchased to the number sold today and the amount
+            // earned to the daily money
+            led.sell(indx, c, unitCents);
+            lowStock.sold(indx);
+            changed(indx);
+            if (store.getAmtOnShelf(indx) == 0) // This sale emptied the shelf
+                metrics.stockout();
+        }
+        return PurchStatus.SUCCESS;
+    }
+    // This method will ring up every line of a basket at once. Every line is
+    // looked up first, then the locks of all the products are held together so
+    // either every line is sold or none are. It returns the status of each line.
+    public PurchStatus[] Purchase(Basket b) {
+        int s = b.size();
+        PurchStatus res[] = new PurchStatus[s];
+        int indx[] = new int[s];
+        boolean ok = true;
+        for (int j = 0; j < s; j++) { // Look up every line before locking
+            indx[j] = find(b.getName(j));
+            if (indx[j] < 0) {
+                res[j] = PurchStatus.INVALID_NAME;
+                ok = false;
+            } else if (b.getAmt(j) <= 0) {
+                res[j] = PurchStatus.INVALID_AMOUNT;
+                ok = false;
+            }
+        }
+        if (ok) {
+            // Sort the lines by product, keeping the line number in the low
+            // bits, so lines buying the same product sit next to each other
+            long order[] = new long[s];
+            boolean used[] = new boolean[STRIPES]; // Which locks are needed
+            for (int j = 0; j < s; j++) {
+                order[j] = ((long) indx[j] << 32) | j;
+                used[indx[j] & (STRIPES - 1)] = true;
+            }
+            Arrays.sort(order);
+            ok = lockAll(0, used, b, order, res);
+            if (ok)
+                saved(); // Report the basket only once it is on disk
+        }
+        if (!ok) { // Lines which did not fail themselves were still not sold
+            for (int j = 0; j < s; j++) {
+                if (res[j] == null)
+                    res[j] = PurchStatus.NOT_APPLIED;
+            }
+        }
+        for (PurchStatus st : res) // Count every line's outcome
+            metrics.count(st);
+        return res;
+    }
+    // Take every lock marked as used, lowest first so two baskets can never
+    // wait on each other, then apply the basket while holding all of them
+    private boolean lockAll(int k, boolean used[], Basket b, long order[],
+                         PurchStatus res[]) {
+        while (k < STRIPES && !used[k])
+            k++;
+        if (k == STRIPES)
+            return applyBasket(b, order, res);
+        synchronized (locks[k]) {
+            return lockAll(k + 1, used, b, order, res);
+        }
+    }
+    // Check that every product has enough on the shelf for all of its lines,
+    // then sell them. Returns false if nothing was sold. Every amount is above
+    // zero, checked before locking, and they are added up as a long so many
+    // large lines can not wrap around below the amount on shelf.
+    private boolean applyBasket(Basket b, long order[], PurchStatus res[]) {
+        boolean ok = true;
+        for (int g = 0; g < order.length; ) { // Check one product at a time
+            int indx = (int) (order[g] >>> 32);
+            int end = g;
+            long c = 0;
+            for (; end < order.length && (int) (order[end] >>> 32) == indx; end++)
+                c += b.getAmt((int) order[end]); // Total amount of this product
+            if (c > store.getAmtOnShelf(indx)) {
+                for (int j = g; j < end; j++)
+                    res[(int) order[j]] = PurchStatus.AMOUNT_TOO_HIGH;
+                ok = false;
+            }
+            g = end;
+        }
+        if (!ok)
+            return false;
+        DayLedger led = today; // Read while holding every lock the basket needs
+        for (int j = 0; j < order.length; j++) { // Nothing failed, sell each line
+            int indx = (int) (order[j] >>> 32);
+            int c = b.getAmt((int) order[j]);
+            int unitCents = (int) store.getPriceCents(indx);
+            if (journal != null)
+                journal.appendPurchase(led.getDay(), indx, c, unitCents);
+            store.sell(indx, c, unitCents);
+            led.sell(indx, c, unitCents);
+            lowStock.sold(indx);
+            changed(indx);
+            if (store.getAmtOnShelf(indx) == 0) // This line emptied the shelf
+                metrics.stockout();
+            res[(int) order[j]] = PurchStatus.SUCCESS;
         }
+        return true;
     }
 }
 
 // The main class
 public class PetSupplyManager implements ActionListener, ChangeListener {
-    Register registerObj = new Register(0f);            // Object for Register
-    // Object for Supply Summary
-    SupplySummary supplySumObj = new SupplySummary(10, 0f, 1); 
+    Register registerObj;          // Object for Register
+    // Runs purchases on worker threads so the window never waits on them
+    PurchasePipeline pipeline;
+    // The newest purchase message which has not been shown yet
+    final AtomicReference<String> lastPurch = new AtomicReference<>();
+    // Set when a register label update is queued on the event thread
+    final AtomicBoolean regPending = new AtomicBoolean();
+    SupplySummary supplySumObj;    // Object for Supply Summary
+    // The store server when this window is a thin client, otherwise null
+    RegisterClient remote;
     
     JFrame sumFrm;     // Declare summary window frame
     JFrame regFrm;     // Declare register window frame
     
     // Table to display the refill priority list
     JTable refPriTbl; 
+    RefillTableModel refPriMdl; // Reads the refill rows from the low stock index
+    // Set when the low stock index changed and a refill table refresh is queued
+    final AtomicBoolean refPending = new AtomicBoolean();
     // Table to display all the products stored, including how much each made
     JTable prodListTbl; 
+    ProdTableModel prodListMdl; // Reads the product rows straight from ProdList
     
     JPanel regPnlName; // Declare a panel to group together product name
     JPanel regPnlAmt;  // Declare a panel to group together amount purchased
@@ -185,8 +668,29 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
     JSlider lowAmtSldr;      // determines the amount to purchase
     // display prompts/info
     JLabel purchLab, dlyMoneyLab, dayLab, prodLab, amtLab, lowAmtLab, ttlMoneyLab; 
+    JLabel queueLab; // displays how many purchases are waiting for a worker
+    JLabel restkLab; // displays how many products the last restock refilled
+    // Sales history view
+    JPanel histPnl;       // groups together the sales history components
+    JTextField histFld;   // holds a product name to look up, blank for top sellers
+    JSpinner fromSpn, toSpn; // the first and last day to look up
+    JLabel histLab;       // displays a product's sales over the days
+    JTable histTbl;       // displays the top sellers over the days
+    DefaultTableModel histMdl; // holds the rows of the top sellers table
 
-    PetSupplyManager() {
+    // Start with the given daily money and total money in cents and day, which
+    // come from the sales journal when the program is saving to a data directory
+    PetSupplyManager(long dly, long ttl, int d) { this(dly, ttl, d, null); }
+    // Start as a thin client of a store server when one is given. Purchases and
+    // day switches then go to the server, and the views of the catalog, which
+    // read this program's own list, are hidden.
+    PetSupplyManager(long dly, long ttl, int d, RegisterClient rc) {
+        remote = rc;
+        registerObj = new Register(dly);
+        // 4 workers, and up to 256 purchases waiting before the register is busy
+        pipeline = rc == null ? new PurchasePipeline(registerObj, 4, 256)
+                              : new PurchasePipeline(rc, 4, 256);
+        supplySumObj = new SupplySummary(10, ttl, d);
         // Create a new JFrame container for the supply summary window
         sumFrm = new JFrame("Supply Summary Window");
         // Create a new JFrame container for the register window
@@ -204,6 +708,7 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
         regPnlName = new JPanel(); // Create the register panel for product name
         regPnlAmt = new JPanel(); // Create the register panel for amount
         sumPnl = new JPanel(); // Create the summary panel
+        histPnl = new JPanel(); // Create the sales history panel
         // Create the text field for the product name to purchase
         prodFld = new JTextField(40);
         // Create a slider for the amount of a product to purchase
@@ -229,52 +734,32 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
         lowAmtSldr.addChangeListener(this);
         
         // Set up tables
-        // Declare data arrays for refill priority JTable
-        String refPriData[][] = new String[ProdList.getListSize()][3];
-        String refPriCNames[] = { "Name", "Amount on Shelf" , "Total Earned"}; 
-        String prodListData[][] = new String[ProdList.getListSize()][6];
-        String prodListCNames[] = { "Name", "Price" , "Amount", "# Sold Today", 
-                                    "# Sold Total", "Total Earned"}; 
-        // Initialize data for product list
-        for(int i = 0; i < ProdList.getListSize(); i++) {
-            // Store product name
-            prodListData[i][0] = ProdList.getName(i);
-            // Store product price
-            prodListData[i][1] = String.format("%.2f", ProdList.getPrice(i));
-            // Store product amount on shelf
-            prodListData[i][2] = Integer.toString(ProdList.getAmtOnShelf(i));
-            // Store number sold today
-            prodListData[i][3] = Integer.toString(ProdList.getNumSoldDay(i));
-            // Store number sold in total
-            prodListData[i][4] = Integer.toString(ProdList.getNumSoldTot(i));
-            // Store the total money the product has made, convert to string
-            prodListData[i][5] = ("$" + String.format("%.2f", 
-                         ((ProdList.getPrice(i) * ProdList.getNumSoldTot(i))))); 
-        }
-        // Initialize data for refill priority data
-        int r = 0; // To increment rows
-        for(int i = 0; i < ProdList.getListSize(); i++) {
-            if (lowAmtSldr.getValue() >= ProdList.getAmtOnShelf(i)) {
-                // Store product name
-                refPriData[r][0] = ProdList.getName(i);
-                // Store product amount on shelf
-                refPriData[r][1] = Integer.toString(ProdList.getAmtOnShelf(i));
-                // Store the total money the product has made, convert to string
-                refPriData[r][2] = ("$" + String.format("%.2f", 
-                         ((ProdList.getPrice(i) * ProdList.getNumSoldTot(i))))); 
-                r++; // Increment row
-            }
-        }
+        // The models read from ProdList directly, so only rows on screen are
+        // ever formatted
+        prodListMdl = new ProdTableModel();
+        refPriMdl = new RefillTableModel();
+        ProdList.addListener(prodListMdl);
         
         // Initialize the JTables
-        prodListTbl = new JTable(prodListData, prodListCNames); 
-        refPriTbl = new JTable(refPriData, refPriCNames); 
+        prodListTbl = new JTable(prodListMdl); 
+        refPriTbl = new JTable(refPriMdl); 
         // Set table bounds
         prodListTbl.setBounds(60, 80, 200, 300); 
         refPriTbl.setBounds(60, 80, 200, 300); 
         // Allow the user to sort the rows by clicking on them
         prodListTbl.setAutoCreateRowSorter(true);
         refPriTbl.setAutoCreateRowSorter(true);
+        // Fill in the refill priority data from the low stock index, and keep it
+        // up to date whenever a product's amount changes
+        refreshRefill();
+        ProdList.lowStock.addListener((i, oldAmt, newAmt) -> {
+            // Many changes in a row only queue one refresh
+            if (refPending.compareAndSet(false, true))
+                SwingUtilities.invokeLater(() -> {
+                    refPending.set(false);
+                    refreshRefill();
+                });
+        });
         // Add Tables to scroll pane
         JScrollPane sp1 = new JScrollPane(refPriTbl); 
         JScrollPane sp2 = new JScrollPane(prodListTbl); 
@@ -285,10 +770,14 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
 		JButton jbtnSupSum = new JButton("Supply Summary");
         // Create the button to purchase a product
         JButton jbtnPch = new JButton("Purchase");
+        // Create the button to look up the sales history
+        JButton jbtnHist = new JButton("History");
         // Create the button to update list
         JButton jbtnUpd = new JButton("Update");
         // Create the button to switch to next day
         JButton jbtnNxtDy = new JButton("Next Day");
+        // Create the button to restock the products which need reordering
+        JButton jbtnRestk = new JButton("Restock");
 
         // Add action listener for the buttons
         jbtnReg.addActionListener(this);
@@ -296,17 +785,21 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
         jbtnPch.addActionListener(this);
         jbtnUpd.addActionListener(this);
         jbtnNxtDy.addActionListener(this);
+        jbtnHist.addActionListener(this);
+        jbtnRestk.addActionListener(this);
 
         // Create the labels.
         purchLab = new JLabel("This will state purchase success/failure");
         dlyMoneyLab = new JLabel("     Amount earned today: $" + 
-                              String.format("%.2f", registerObj.getDlyMoney()));
+                              Money.format(dlyCents()));
         dayLab = new JLabel("Day : " + Integer.toString(supplySumObj.getDay()));
+        queueLab = new JLabel("Waiting purchases: 0");
+        restkLab = new JLabel("Restocked products: 0");
         prodLab = new JLabel("Product Name: ");
         amtLab = new JLabel("Amount to buy: " + amtSldr.getValue());
         lowAmtLab = new JLabel("Alert for refill at: " + lowAmtSldr.getValue());
         ttlMoneyLab = new JLabel("Total $ Earned: " + 
-                             String.format("%.2f", supplySumObj.getTtlMoney()));
+                             Money.format(supplySumObj.getTtlCents()));
         // Register components
         // Add components to JPanel
         regPnlName.add(prodLab);
@@ -317,6 +810,7 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
         // Add the components to the content pane.
         regFrm.add(purchLab);
         regFrm.add(dlyMoneyLab);
+        regFrm.add(queueLab);
         regFrm.add(regPnlName);
         regFrm.add(regPnlAmt);
         regFrm.add(jbtnPch);
@@ -328,12 +822,43 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
         sumPnl.add(dayLab);
         sumPnl.add(jbtnNxtDy);
         sumPnl.add(jbtnUpd);
+        sumPnl.add(jbtnRestk);
+        sumPnl.add(restkLab);
         sumPnl.add(jbtnReg);
         // Add the components to the content pane.
         sumFrm.add(sp1);
         sumFrm.add(sp2);
         sumFrm.add(sumPnl);
         sumFrm.add(ttlMoneyLab);
+        // Sales history components, looking at the last 30 days to start
+        histFld = new JTextField(20);
+        fromSpn = new JSpinner(new SpinnerNumberModel(Math.max(1, d - 30), 1,
+                                                      Integer.MAX_VALUE, 1));
+        toSpn = new JSpinner(new SpinnerNumberModel(Math.max(1, d - 1), 1,
+                                                    Integer.MAX_VALUE, 1));
+        histLab = new JLabel("Blank name shows the top sellers");
+        histMdl = new DefaultTableModel(new String[] { "Top Sellers", "Units",
+                                                       "Earned" }, 0);
+        histTbl = new JTable(histMdl);
+        histTbl.setPreferredScrollableViewportSize(new Dimension(450, 160));
+        histPnl.add(new JLabel("History of: "));
+        histPnl.add(histFld);
+        histPnl.add(new JLabel("From day"));
+        histPnl.add(fromSpn);
+        histPnl.add(new JLabel("to"));
+        histPnl.add(toSpn);
+        histPnl.add(jbtnHist);
+        sumFrm.add(histPnl);
+        sumFrm.add(histLab);
+        JScrollPane sp3 = new JScrollPane(histTbl);
+        sumFrm.add(sp3);
+
+        if (remote != null) { // Only what the store server can answer
+            for (Component c : new Component[] { sp1, sp2, sp3, histPnl, histLab,
+                                                 lowAmtLab, lowAmtSldr, jbtnUpd,
+                                                 jbtnRestk, restkLab })
+                c.setVisible(false);
+        }
 
         // Display the initial frames.
         regFrm.setVisible(true);
@@ -345,11 +870,37 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
     { 
         amtLab.setText("Amount to buy: " + amtSldr.getValue()); 
         lowAmtLab.setText("Alert for refill at: " + lowAmtSldr.getValue());
+        if (e.getSource() == lowAmtSldr) // A new threshold, refill list changes
+            refreshRefill();
     } 
+    // Fill the refill priority table with the products at or below the low
+    // amount, lowest amount first, without looking at the whole catalog
+    void refreshRefill() { refPriMdl.refresh(lowAmtSldr.getValue()); }
+    // Called on a worker thread when a purchase finishes. Many purchases
+    // finishing together only queue one label update.
+    void purchaseDone(String msg) {
+        lastPurch.set(msg);
+        if (regPending.compareAndSet(false, true))
+            SwingUtilities.invokeLater(this::showRegister);
+    }
+    // Retrieve the money earned today in cents, from the store server when
+    // this is a thin client
+    long dlyCents() {
+        return remote != null ? remote.getDlyCents() : Register.getDlyCents();
+    }
+    // Show the newest purchase message, the daily money and the queue length
+    void showRegister() {
+        regPending.set(false);
+        String msg = lastPurch.getAndSet(null);
+        if (msg != null)
+            purchLab.setText(msg);
+        dlyMoneyLab.setText("     Amount earned today: $" + 
+                            Money.format(dlyCents()));
+        queueLab.setText("Waiting purchases: " + pipeline.getQueued());
+    }
     // Manage button interactions
     @Override
     public void actionPerformed(ActionEvent ae) {
-        int r = 0; // Create variable to increment rows
         switch(ae.getActionCommand()) {
             case "Register" :
                 // Switch to the Register view
@@ -362,67 +913,140 @@ public class PetSupplyManager implements ActionListener, ChangeListener {
                 regFrm.setVisible(false);           
                 break;
             case "Purchase" :
-                /* If "Purchase" is clicked, call the Purchase method using the
-                   product name inputted and the value on the slider, and store
-                   what it returns in the purchase status label */
-                purchLab.setText(registerObj.Purchase(prodFld.getText(), 
-                                                      amtSldr.getValue()));
-                dlyMoneyLab.setText("     Amount earned today: $" + 
-                              String.format("%.2f", registerObj.getDlyMoney()));
+                /* If "Purchase" is clicked, queue a purchase using the
+                   product name inputted and the value on the slider. Its
+                   message goes in the purchase status label when it is done */
+                if (!pipeline.submit(prodFld.getText(), amtSldr.getValue(),
+                                     this::purchaseDone))
+                    purchLab.setText("Purchase Failed: Register Busy, " + 
+                                     pipeline.getCapacity() + " Purchases Waiting");
+                queueLab.setText("Waiting purchases: " + pipeline.getQueued());
                 break;
             case "Update" : 
-                // If "Update" is clicked, first reset all values to 0 in
-                // refill priority table
-                for(r = 0; r < ProdList.getListSize(); r++) {
-                    for(int c = 0; c < 3; c++) {
-                        refPriTbl.setValueAt("", r, c); // Set blank value
-                    }
-                }
-                // Fill in the table with products which are understocked
-                r = 0; // Reset row count
-                for(int i = 0; i < ProdList.getListSize(); i++) {
-                    if (lowAmtSldr.getValue() >= ProdList.getAmtOnShelf(i)) {
-                        // Store product name
-                        refPriTbl.setValueAt(ProdList.getName(i), r, 0);
-                        // Store product amount on shelf
-                        refPriTbl.setValueAt(Integer.toString(ProdList.getAmtOnShelf(i)), r, 1);
-                        // Store the total money the product has made, convert to string
-                        refPriTbl.setValueAt("$" + String.format("%.2f", 
-                         ((ProdList.getPrice(i) * ProdList.getNumSoldTot(i)))), r, 2);
-                        r++; // Increment row
+                long start = RegisterMetrics.now();
+                // If "Update" is clicked, refresh the refill priority table
+                // with the products which are understocked
+                refreshRefill();
+                // Also tell the product table about any changed rows
+                prodListMdl.flush();
+                ProdList.metrics.time(RegisterMetrics.REFRESH, start);
+                // Carry on with reorder points the last day switch ran out
+                // of time for
+                ProdList.planner.recompute(SupplySummary.PLAN_BUDGET_NS);
+                break;
+            case "Restock" :
+                // Restock every product the reorder plan lists, up to 100, with
+                // the amount planned for each
+                ProdList.planner.recompute(SupplySummary.PLAN_BUDGET_NS);
+                restkLab.setText("Restocked products: " + 
+                                 supplySumObj.ReceiveOrders(100));
+                prodListMdl.flush();
+                break;
+            case "History" :
+                // Look up the product's sales over the days, or the top 10
+                // sellers when no product name is given
+                int from = (Integer) fromSpn.getValue();
+                int to = (Integer) toSpn.getValue();
+                histMdl.setRowCount(0);
+                if (histFld.getText().isEmpty()) {
+                    histLab.setText("Top sellers, days " + from + " to " + to);
+                    for (int i : ProdList.history.top(10, from, to, false)) {
+                        long sold[] = ProdList.history.range(i, from, to);
+                        histMdl.addRow(new Object[] { ProdList.getName(i),
+                                     sold[0], "$" + Money.format(sold[1]) });
                     }
-                }
-                // Also update the second table by checking if the total sold changed
-                for(int i = 0; i < ProdList.getListSize(); i++) {
-                    if(prodListTbl.getValueAt(i, 4) != Integer.toString(ProdList.getNumSoldTot(i))) {
-                        prodListTbl.setValueAt(Integer.toString(ProdList.getAmtOnShelf(i)), i, 2);
-                        prodListTbl.setValueAt(Integer.toString(ProdList.getNumSoldDay(i)), i, 3);
-                        prodListTbl.setValueAt(Integer.toString(ProdList.getNumSoldTot(i)), i, 4);
-                        prodListTbl.setValueAt("$" + String.format("%.2f", 
-                         ((ProdList.getPrice(i) * ProdList.getNumSoldTot(i)))), i, 5);                        
+                } else {
+                    int i = registerObj.Lookup(histFld.getText());
+                    if (i < 0) {
+                        histLab.setText("History Failed: Invalid Name");
+                    } else {
+                        long sold[] = ProdList.history.range(i, from, to);
+                        histLab.setText("Days " + from + " to " + to + ": " + 
+                                        sold[0] + " sold, $" + 
+                                        Money.format(sold[1]) + " earned");
                     }
                 }
                 break;
             case "Next Day" :
+                if (remote != null) { // The store server switches its day
+                    // Wait for the server off the event thread, so the window
+                    // keeps drawing, and click once until the reply is in
+                    Component btn = (Component) ae.getSource();
+                    btn.setEnabled(false);
+                    Thread t = new Thread(() -> {
+                        long nd[] = null;
+                        try {
+                            nd = remote.NextDay();
+                        } catch (java.io.IOException e) {
+                            // Shown below
+                        }
+                        long r[] = nd;
+                        SwingUtilities.invokeLater(() -> {
+                            btn.setEnabled(true);
+                            if (r == null) {
+                                dayLab.setText("Next Day Failed: Store Unreachable");
+                                return;
+                            }
+                            dayLab.setText("Day : " + r[0]);
+                            ttlMoneyLab.setText("Total $ Earned: " + Money.format(r[1]));
+                            dlyMoneyLab.setText("     Amount earned today: $" + 
+                                        Money.format(dlyCents()));
+                        });
+                    }, "Next day");
+                    t.setDaemon(true);
+                    t.start();
+                    break;
+                }
                 // Switch daily items to 0, and update them on the list
                 supplySumObj.SwitchDay();
                 dayLab.setText("Day : " + Integer.toString(supplySumObj.getDay()));
-                for (int i = 0; i < ProdList.getListSize(); i++) {
-                    prodListTbl.setValueAt("0", i, 3);
-                }
+                prodListMdl.columnChanged(3); // Sold today is now 0 everywhere
                 // Update labels
                 dlyMoneyLab.setText("     Amount earned today: $" + 
-                            String.format("%.2f", registerObj.getDlyMoney()));
+                            Money.format(dlyCents()));
                 ttlMoneyLab.setText("Total $ Earned: " + 
-                             String.format("%.2f", supplySumObj.getTtlMoney()));
+                             Money.format(supplySumObj.getTtlCents()));
                 break;
         }
     }
-    public static void main(String args[]) {
+    // An optional argument names a data directory. When it is given, sales are
+    // saved there and loaded again on the next start. A second argument names a
+    // catalog file, CSV or binary (see CatalogIO). With a data directory it
+    // updates the saved products. With "-" in place of the data directory
+    // nothing is saved and the catalog replaces the built in list.
+    // Run with -Dpetsupply.metrics.dump=<seconds> to print the register metrics
+    // that often. They can always be read through JMX.
+    // Run with -Dpetsupply.connect=<host>:<port> to be a thin client of a
+    // StoreServer instead, which keeps the catalog and sales.
+    public static void main(String args[]) throws java.io.IOException {
+        String connect = System.getProperty("petsupply.connect");
+        if (connect != null) {
+            RegisterClient rc = RegisterClient.connect(connect);
+            long st[] = rc.Summary(); // Day, daily money, total money
+            SwingUtilities.invokeLater(() ->
+                    new PetSupplyManager(st[1], st[2], (int) st[0], rc));
+            return;
+        }
+        SalesJournal sj = ProdList.open(args.length > 0 ? args[0] : null,
+                                        args.length > 1 ? args[1] : null);
+        if (sj != null) {
+            // Save everything still buffered when the window closes the program
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    sj.close();
+                } catch (java.io.IOException e) {
+                    System.err.println("Closing sales journal failed: " + e);
+                }
+            }));
+        }
         // Create the frame on the event dispatching thread.
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                new PetSupplyManager();
+                SalesJournal j = ProdList.journal;
+                if (j == null)
+                    new PetSupplyManager(0L, 0L, 1);
+                else
+                    new PetSupplyManager(j.getDlyCents(), j.getTtlCents(), j.getDay());
             }
         });
     }
@@ -0,0 +1,65 @@
+/*************************************************************************************
+ * ProdIndex
+ * -----------------------------------------------------------------------------------
+ * An index over the product names stored in ProdList, so a register lookup does not
+ * have to compare the given name against every product. Exact names are looked up
+ * in a hash map. A second hash map keyed by the lower case name handles
+ * case-insensitive lookups.
+ * Products that were added to the list after the last lookup are indexed on the
+ * next call, so the index never needs a full rebuild.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.*;                  // For Locale
+import java.util.concurrent.*;       // Concurrent maps so registers can share one index
+
+class ProdIndex implements SearchInt {
+    // Exact product name to its index in ProdList
+    private final ConcurrentHashMap<String, Integer> exact = new ConcurrentHashMap<>();
+    // Lower case product name to its index
+    private final ConcurrentHashMap<String, Integer> folded = new ConcurrentHashMap<>();
+    // Number of products from ProdList that have been indexed so far
+    private volatile int indexed;
+
+    // Lower case a name the same way for storing and for looking up
+    private static String fold(String n) { return n.toLowerCase(Locale.ROOT); }
+    // Add the product at the given index to both maps. If two names only differ
+    // in case, the first one keeps the case-insensitive entry.
+    private void add(int i) {
+        String n = ProdList.getName(i);
+        exact.putIfAbsent(n, i);
+        folded.putIfAbsent(fold(n), i);
+    }
+    // Index any products which were added to ProdList since the last call
+    public void sync() {
+        if (indexed == ProdList.getListSize()) // Nothing new, skip the lock
+            return;
+        synchronized (this) {
+            int s = ProdList.getListSize();
+            for (int i = indexed; i < s; i++)
+                add(i);
+            indexed = s;
+        }
+    }
+    // Forget every product, used when the whole catalog is replaced. The new
+    // products are indexed on the next lookup.
+    public synchronized void clear() {
+        exact.clear();
+        folded.clear();
+        indexed = 0;
+    }
+    // Return the index of the product with exactly the given name, or -1. The
+    // name comes from SearchInt, this does not scan the list.
+    @Override
+    public int LinearSearch(String n) {
+        sync();
+        Integer i = exact.get(n);
+        return i == null ? -1 : i;
+    }
+    // Return the index of the product with the given name ignoring case, or -1
+    public int FoldSearch(String n) {
+        sync();
+        Integer i = folded.get(fold(n));
+        return i == null ? -1 : i;
+    }
+}
@@ -0,0 +1,375 @@
+/*************************************************************************************
+ * ProdStore
+ * -----------------------------------------------------------------------------------
+ * Holds the values of every product in columns, one buffer per value, so a catalog
+ * with millions of products is a handful of large primitive buffers instead of
+ * millions of objects. Prices are kept as whole cents. Names are stored as UTF-8
+ * bytes back to back in one name buffer, with a column of offsets into it.
+ * The buffers are either normal heap buffers or direct buffers outside the Java
+ * heap (off-heap), which keeps a large catalog out of the garbage collector's way.
+ * The store grows by doubling. A grow swaps in a whole new set of columns at once,
+ * so a reader always sees columns of the same size.
+ * The columns can be saved to a catalog file with the same layout and mapped back
+ * into memory, so loading a saved catalog only maps the file no matter how many
+ * products it holds. The mapping is private: sales change the memory, never the
+ * file, and the file is only read a page at a time as products are used.
+ * Adding products must happen while holding every ProdList lock, and changing a
+ * product's values while holding that product's lock. Reading needs no lock.
+ * -----------------------------------------------------------------------------------
+ * FILE (little endian, each long column starting on a multiple of 8 bytes)
+ *  Header : int 0x50534331 ("PSC1"), int number of products n, long name bytes,
+ *           long reserved
+ *  Columns: int name offsets (n + 1), name bytes, long prices, int amounts on
+ *           shelf, int totals sold, long money made
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                         // For IOException
+import java.nio.*;                        // For the column buffers
+import java.nio.channels.*;               // For mapping catalog files
+import java.nio.charset.StandardCharsets; // For encoding names
+import java.nio.file.*;                   // For Path
+
+class ProdStore {
+    static final int MAGIC = 0x50534331; // Marks a catalog file ("PSC1")
+    static final int HEADER = 24;        // Bytes before the first column
+    // Highest price a product may have, so a sale's unit price fits in an int
+    static final long MAX_PRICE_CENTS = Integer.MAX_VALUE;
+    // One set of columns. A grow builds a new set and swaps it in whole.
+    private static final class Cols {
+        final int cap;          // Number of products the columns can hold
+        final IntBuffer nameOff;  // Start of each name in names, plus one end
+        final ByteBuffer names;   // The UTF-8 bytes of every name
+        final LongBuffer price;   // Price in cents
+        final IntBuffer amtOnShelf; // Amount on shelfs
+        final IntBuffer numSoldTot; // Total sold over all the days
+        final LongBuffer revTot;    // Total money made over all the days in cents
+        Cols(int c, int nameBytes, boolean offHeap) {
+            cap = c;
+            nameOff = ints(c + 1, offHeap);
+            names = bytes(nameBytes, offHeap);
+            price = bytes(c * 8, offHeap).asLongBuffer();
+            amtOnShelf = ints(c, offHeap);
+            numSoldTot = ints(c, offHeap);
+            revTot = bytes(c * 8, offHeap).asLongBuffer();
+        }
+        // Columns over the given buffers, such as the parts of a mapped file
+        Cols(int c, IntBuffer off, ByteBuffer n, LongBuffer p, IntBuffer amt,
+             IntBuffer sold, LongBuffer rev) {
+            cap = c;
+            nameOff = off;
+            names = n;
+            price = p;
+            amtOnShelf = amt;
+            numSoldTot = sold;
+            revTot = rev;
+        }
+    }
+
+    private final boolean offHeap; // True if the columns are direct buffers
+    private volatile Cols cols;    // The current columns
+    private volatile int size;     // Number of products stored
+
+    // Create an empty store, off the heap or not
+    ProdStore(boolean offHeap) {
+        this.offHeap = offHeap;
+        cols = new Cols(16, 1024, offHeap);
+    }
+
+    // Allocate a byte buffer in native order, on or off the heap
+    private static ByteBuffer bytes(int n, boolean offHeap) {
+        ByteBuffer b = offHeap ? ByteBuffer.allocateDirect(n) : ByteBuffer.allocate(n);
+        return b.order(ByteOrder.nativeOrder());
+    }
+    // Allocate an int column
+    private static IntBuffer ints(int n, boolean offHeap) {
+        return bytes(n * 4, offHeap).asIntBuffer();
+    }
+
+    // Add a product to the end of the store and return its index
+    public int add(String n, long cents, int amt) {
+        byte b[] = n.getBytes(StandardCharsets.UTF_8);
+        return add(b, 0, b.length, cents, amt);
+    }
+    // Add a product whose name is len UTF-8 bytes of b starting at off, so a
+    // name read from a file never has to become a String
+    public int add(byte b[], int off, int len, long cents, int amt) {
+        Cols c = cols;
+        int i = size;
+        int end = c.nameOff.get(i);
+        if (i == c.cap || end + len > c.names.capacity())
+            c = grow(Math.max(c.cap, i + 1), end + len);
+        ByteBuffer names = c.names.duplicate();
+        names.position(end);
+        names.put(b, off, len);
+        c.nameOff.put(i + 1, end + len);
+        c.price.put(i, cents);
+        c.amtOnShelf.put(i, amt);
+        size = i + 1; // Published last so readers never see a half added product
+        return i;
+    }
+    // Swap in columns with at least the given capacity and name bytes, doubling
+    // so adding many products copies each one only a few times
+    private Cols grow(int minCap, int minNames) {
+        Cols old = cols;
+        // A mapped empty catalog has no room at all, and 0 never doubles
+        int cap = Math.max(1, old.cap), nb = Math.max(1, old.names.capacity());
+        while (cap < minCap)
+            cap *= 2;
+        while (nb < minNames)
+            nb *= 2;
+        Cols c = new Cols(cap, nb, offHeap);
+        int s = size;
+        copy(old.nameOff, c.nameOff, s + 1);
+        copy(old.price, c.price, s);
+        copy(old.amtOnShelf, c.amtOnShelf, s);
+        copy(old.numSoldTot, c.numSoldTot, s);
+        copy(old.revTot, c.revTot, s);
+        ByteBuffer from = old.names.duplicate();
+        from.limit(old.nameOff.get(s)).position(0);
+        c.names.duplicate().put(from);
+        cols = c;
+        return c;
+    }
+    // Copy the first n values of a column into a new column
+    private static void copy(IntBuffer from, IntBuffer to, int n) {
+        IntBuffer f = from.duplicate();
+        f.limit(n).position(0);
+        to.duplicate().put(f);
+    }
+    private static void copy(LongBuffer from, LongBuffer to, int n) {
+        LongBuffer f = from.duplicate();
+        f.limit(n).position(0);
+        to.duplicate().put(f);
+    }
+
+    // Take over every product of another store, such as one a catalog file was
+    // loaded into, in place of this store's products
+    public void replace(ProdStore o) {
+        cols = o.cols;
+        size = o.size;
+    }
+
+    // Return where each part of a catalog file of n products with the given
+    // name bytes starts: name offsets, names, prices, amounts, totals sold,
+    // money made, and the end of the file
+    private static long[] layout(int n, long nameBytes) {
+        long at[] = new long[7];
+        at[0] = HEADER;
+        at[1] = at[0] + 4L * (n + 1);
+        at[2] = (at[1] + nameBytes + 7) & ~7L; // Longs start on a multiple of 8
+        at[3] = at[2] + 8L * n;
+        at[4] = at[3] + 4L * n;
+        at[5] = (at[4] + 4L * n + 7) & ~7L;
+        at[6] = at[5] + 8L * n;
+        return at;
+    }
+    // Write every product to a catalog file
+    public void save(Path p) throws IOException {
+        Cols c = cols;
+        int n = size;
+        int nameBytes = c.nameOff.get(n);
+        long at[] = layout(n, nameBytes);
+        try (FileChannel out = FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20)
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(n).putLong(nameBytes).putLong(0);
+            write(out, buf, at[0]);
+            // Each column goes through the buffer, changed to little endian
+            writeInts(out, buf, slice(c.nameOff, n + 1));
+            ByteBuffer names = c.names.duplicate();
+            names.limit(nameBytes).position(0);
+            while (names.hasRemaining())
+                out.write(names);
+            write(out, buf, at[2]);
+            writeLongs(out, buf, slice(c.price, n));
+            writeInts(out, buf, slice(c.amtOnShelf, n));
+            writeInts(out, buf, slice(c.numSoldTot, n));
+            write(out, buf, at[5]);
+            writeLongs(out, buf, slice(c.revTot, n));
+            out.force(true);
+        }
+    }
+    // Return the first n values of a column
+    private static IntBuffer slice(IntBuffer b, int n) {
+        IntBuffer d = b.duplicate();
+        d.limit(n).position(0);
+        return d;
+    }
+    private static LongBuffer slice(LongBuffer b, int n) {
+        LongBuffer d = b.duplicate();
+        d.limit(n).position(0);
+        return d;
+    }
+    // Write a column through the buffer, a buffer full at a time
+    private static void writeInts(FileChannel out, ByteBuffer buf, IntBuffer src)
+                                                            throws IOException {
+        while (src.hasRemaining()) {
+            IntBuffer part = src.slice();
+            part.limit(Math.min(part.limit(), buf.capacity() / 4));
+            buf.asIntBuffer().put(part);
+            buf.position(part.limit() * 4);
+            src.position(src.position() + part.limit());
+            write(out, buf, 0);
+        }
+    }
+    private static void writeLongs(FileChannel out, ByteBuffer buf, LongBuffer src)
+                                                            throws IOException {
+        while (src.hasRemaining()) {
+            LongBuffer part = src.slice();
+            part.limit(Math.min(part.limit(), buf.capacity() / 8));
+            buf.asLongBuffer().put(part);
+            buf.position(part.limit() * 8);
+            src.position(src.position() + part.limit());
+            write(out, buf, 0);
+        }
+    }
+    // Write what is in the buffer, then zeros until the file reaches the given
+    // position, and empty the buffer
+    private static void write(FileChannel out, ByteBuffer buf, long upTo)
+                                                            throws IOException {
+        while (out.position() + buf.position() < upTo)
+            buf.put((byte) 0);
+        buf.flip();
+        while (buf.hasRemaining())
+            out.write(buf);
+        buf.clear();
+    }
+    // Replace every product with the ones in a catalog file by mapping the file
+    // as the columns. Returns the number of products.
+    public int map(Path p) throws IOException {
+        MappedByteBuffer m;
+        // A private mapping needs a channel open for writing, though the
+        // file itself is never written
+        try (FileChannel in = FileChannel.open(p, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE)) {
+            // The mapping stays after the file is closed
+            m = in.map(FileChannel.MapMode.PRIVATE, 0, in.size());
+        }
+        m.order(ByteOrder.LITTLE_ENDIAN);
+        if (m.capacity() < HEADER || m.getInt(0) != MAGIC)
+            throw new IOException("Not a catalog file: " + p);
+        int n = m.getInt(4);
+        long nameBytes = m.getLong(8);
+        long at[] = layout(n, nameBytes);
+        if (at[6] > m.capacity())
+            throw new IOException("Catalog file is cut off: " + p);
+        cols = new Cols(n, part(m, at[0], at[1]).asIntBuffer(),
+                        part(m, at[1], at[1] + nameBytes),
+                        part(m, at[2], at[3]).asLongBuffer(),
+                        part(m, at[3], at[4]).asIntBuffer(),
+                        part(m, at[4], at[4] + 4L * n).asIntBuffer(),
+                        part(m, at[5], at[6]).asLongBuffer());
+        size = n;
+        return n;
+    }
+    // Return the bytes of a mapped file from one position up to another
+    private static ByteBuffer part(MappedByteBuffer m, long from, long to) {
+        ByteBuffer b = m.duplicate();
+        b.limit((int) to).position((int) from);
+        return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Retrieve the number of products
+    public int size() { return size; }
+    // Retrieve true if the columns are off the heap
+    public boolean isOffHeap() { return offHeap; }
+    // Retrieve the name of a product, decoded from the name bytes. Names on the
+    // heap are decoded in place, others are copied out first.
+    public String getName(int i) {
+        Cols c = cols;
+        int start = c.nameOff.get(i), end = c.nameOff.get(i + 1);
+        if (c.names.hasArray())
+            return new String(c.names.array(), c.names.arrayOffset() + start,
+                              end - start, StandardCharsets.UTF_8);
+        byte b[] = new byte[end - start];
+        c.names.duplicate().position(start).get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+    // Return true if the name of a product is the given UTF-8 bytes. The bytes
+    // are compared where they are stored, so nothing is allocated, and a name
+    // of another length is turned down without looking at it.
+    public boolean nameEquals(int i, byte b[]) {
+        Cols c = cols;
+        int start = c.nameOff.get(i), len = c.nameOff.get(i + 1) - start;
+        if (len != b.length)
+            return false;
+        ByteBuffer names = c.names;
+        if (names.hasArray()) {
+            int from = names.arrayOffset() + start;
+            return java.util.Arrays.equals(names.array(), from, from + len, b, 0, len);
+        }
+        for (int k = 0; k < len; k++) {
+            if (names.get(start + k) != b[k])
+                return false;
+        }
+        return true;
+    }
+    // Retrieve and change the values of a product
+    public long getPriceCents(int i) { return cols.price.get(i); }
+    public void setPriceCents(int i, long v) { cols.price.put(i, v); }
+    public int getAmtOnShelf(int i) { return cols.amtOnShelf.get(i); }
+    public void setAmtOnShelf(int i, int v) { cols.amtOnShelf.put(i, v); }
+    public int getNumSoldTot(int i) { return cols.numSoldTot.get(i); }
+    public void setNumSoldTot(int i, int v) { cols.numSoldTot.put(i, v); }
+    public long getRevTot(int i) { return cols.revTot.get(i); }
+    public void setRevTot(int i, long v) { cols.revTot.put(i, v); }
+    // Record a sale of c units of a product at the given price in cents, in the
+    // shelf amount, the total sold and the money made. The daily count is kept
+    // by the day's DayLedger.
+    public void sell(int i, int c, long unitCents) {
+        Cols k = cols;
+        k.amtOnShelf.put(i, k.amtOnShelf.get(i) - c);
+        k.numSoldTot.put(i, k.numSoldTot.get(i) + c);
+        k.revTot.put(i, k.revTot.get(i) + c * unitCents);
+    }
+    // Put c more units of a product on the shelf
+    public void receive(int i, int c) {
+        Cols k = cols;
+        k.amtOnShelf.put(i, k.amtOnShelf.get(i) + c);
+    }
+
+    // Retrieve the number of bytes the columns take up, including room which
+    // has not been used yet
+    public long getFootprint() {
+        Cols c = cols;
+        return 4L * (c.cap + 1) + c.names.capacity() + 16L * c.cap + 8L * c.cap;
+    }
+    // Retrieve the number of bytes actually used by the stored products
+    public long getUsedBytes() {
+        int s = size;
+        return 4L * (s + 1) + cols.nameOff.get(s) + 24L * s;
+    }
+
+    // Fill a store with the given number of made up products, then report how
+    // much memory it uses and how fast its columns can be scanned.
+    // Run with -Dpetsupply.offheap=true to measure the off-heap columns.
+    public static void main(String args[]) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = rt.totalMemory() - rt.freeMemory();
+        ProdStore s = new ProdStore(Boolean.getBoolean("petsupply.offheap"));
+        for (int i = 0; i < n; i++)
+            s.add("Synthetic Pet Supply Product Number " + i, 199 + i % 10000, i % 50);
+        System.gc();
+        long heapAfter = rt.totalMemory() - rt.freeMemory();
+        System.out.printf("%d products, %s: %.1f MB of columns (%.1f MB used), "
+                + "%.1f MB heap growth%n", n, s.isOffHeap() ? "off-heap" : "heap",
+                s.getFootprint() / 1e6, s.getUsedBytes() / 1e6,
+                (heapAfter - heapBefore) / 1e6);
+        for (int round = 0; round < 5; round++) { // Early rounds warm up the JIT
+            long start = System.nanoTime();
+            long stock = 0, value = 0;
+            for (int i = 0; i < n; i++) {
+                int amt = s.getAmtOnShelf(i);
+                stock += amt;
+                value += amt * s.getPriceCents(i);
+            }
+            long ns = System.nanoTime() - start;
+            System.out.printf("scan %d: %.1f M products/s (stock %d, value %d)%n",
+                              round, n * 1e3 / ns, stock, value);
+        }
+    }
+}
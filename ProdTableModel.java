@@ -0,0 +1,157 @@
+/*************************************************************************************
+ * ProdTableModel
+ * -----------------------------------------------------------------------------------
+ * Table models which read straight from ProdList instead of copying every product
+ * into a String array. A JTable only asks for the cells it is painting, so only the
+ * visible rows are ever formatted, however large the catalog is.
+ * ProdTableModel backs the product list table. Rows changed by a sale are marked in
+ * a dirty set from whatever thread made the sale, and one flush on the event
+ * dispatch thread turns the set into a few row range events instead of one event
+ * per cell. There is a dirty set per ProdList lock stripe, guarded by that lock,
+ * which the thread making the sale already holds, so registers selling different
+ * products never wait on each other to mark their rows.
+ * RefillTableModel backs the refill priority table with the rows of a low stock
+ * index query.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.BitSet;                 // For the dirty rows
+import java.util.concurrent.atomic.*;    // For the queued flush flag
+import javax.swing.*;                    // For SwingUtilities
+import javax.swing.event.*;              // For TableModelEvent
+import javax.swing.table.*;              // For AbstractTableModel
+
+class ProdTableModel extends AbstractTableModel implements ProdListener {
+    private static final long serialVersionUID = 1L;
+    static final int MAX_RANGES = 32; // More dirty ranges than this become one
+    private static final String cNames[] = { "Name", "Price" , "Amount",
+                                 "# Sold Today", "# Sold Total", "Total Earned"};
+    private static final int STRIPES = ProdList.STRIPES;
+    private static final int SHIFT = Integer.numberOfTrailingZeros(STRIPES);
+    // Rows changed since the last flush, a set per stripe, holding index / STRIPES
+    private final BitSet dirty[] = new BitSet[STRIPES];
+    private final AtomicBoolean pending = new AtomicBoolean(); // Flush queued
+    private int rows; // Row count the table was last told about
+
+    ProdTableModel() {
+        rows = ProdList.getListSize();
+        for (int s = 0; s < STRIPES; s++)
+            dirty[s] = new BitSet();
+    }
+
+    @Override
+    public int getRowCount() { return rows; }
+    @Override
+    public int getColumnCount() { return cNames.length; }
+    @Override
+    public String getColumnName(int c) { return cNames[c]; }
+    // The count columns hold numbers so they sort as numbers
+    @Override
+    public Class<?> getColumnClass(int c) {
+        return c >= 2 && c <= 4 ? Integer.class : String.class;
+    }
+    // Read a cell from ProdList, formatting it only now that it is needed
+    @Override
+    public Object getValueAt(int r, int c) {
+        switch (c) {
+            case 0: return ProdList.getName(r);
+            case 1: return Money.format(ProdList.getPriceCents(r));
+            case 2: return ProdList.getAmtOnShelf(r);
+            case 3: return ProdList.getNumSoldDay(r);
+            case 4: return ProdList.getNumSoldTot(r);
+            default: // The total money the product has made
+                return "$" + Money.format(ProdList.getRevenue(r));
+        }
+    }
+
+    // Mark a product's row as changed and queue a flush. This can be called
+    // from any thread holding the product's lock.
+    @Override
+    public void prodChanged(int indx) {
+        dirty[indx & (STRIPES - 1)].set(indx >>> SHIFT);
+        queueFlush();
+    }
+    // New rows need no marking, the flush sees the list has grown
+    @Override
+    public void prodsAdded(int first, int end) { queueFlush(); }
+    private void queueFlush() {
+        // Only read the flag while a flush is queued, so sales do not all
+        // write the one shared flag
+        if (!pending.get() && pending.compareAndSet(false, true))
+            SwingUtilities.invokeLater(this::flush);
+    }
+    // Tell the table about new rows and changed rows. Runs on the event
+    // dispatch thread, with one event per run of changed rows.
+    void flush() {
+        pending.set(false);
+        BitSet d = new BitSet();
+        for (int s = 0; s < STRIPES; s++) { // Take each stripe's rows in turn
+            BitSet st = dirty[s];
+            synchronized (ProdList.lockFor(s)) {
+                for (int p = st.nextSetBit(0); p >= 0; p = st.nextSetBit(p + 1))
+                    d.set(p << SHIFT | s);
+                st.clear();
+            }
+        }
+        int s = ProdList.getListSize();
+        if (s > rows) { // Products were added since the last flush
+            int old = rows;
+            rows = s;
+            fireTableRowsInserted(old, s - 1);
+            d.clear(old, s);
+        }
+        if (d.isEmpty())
+            return;
+        int ranges = 0;
+        for (int i = d.nextSetBit(0); i >= 0; i = d.nextSetBit(d.nextClearBit(i)))
+            ranges++;
+        if (ranges > MAX_RANGES) { // Cheaper to repaint the span once
+            fireTableRowsUpdated(d.nextSetBit(0), d.length() - 1);
+            return;
+        }
+        for (int i = d.nextSetBit(0); i >= 0; ) {
+            int end = d.nextClearBit(i);
+            fireTableRowsUpdated(i, end - 1);
+            i = d.nextSetBit(end);
+        }
+    }
+    // Tell the table one column changed in every row, such as the daily count
+    // after a day switch
+    void columnChanged(int c) {
+        if (rows > 0)
+            fireTableChanged(new TableModelEvent(this, 0, rows - 1, c));
+    }
+}
+
+class RefillTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String cNames[] = { "Name", "Amount on Shelf" ,
+                                              "Total Earned"};
+    private int prods[] = new int[0]; // The product shown on each row
+
+    @Override
+    public int getRowCount() { return prods.length; }
+    @Override
+    public int getColumnCount() { return cNames.length; }
+    @Override
+    public String getColumnName(int c) { return cNames[c]; }
+    @Override
+    public Class<?> getColumnClass(int c) {
+        return c == 1 ? Integer.class : String.class;
+    }
+    @Override
+    public Object getValueAt(int r, int c) {
+        int i = prods[r];
+        switch (c) {
+            case 0: return ProdList.getName(i);
+            case 1: return ProdList.getAmtOnShelf(i);
+            default: // The total money the product has made
+                return "$" + Money.format(ProdList.getRevenue(i));
+        }
+    }
+    // Show the products at or below the low amount, from the low stock index
+    void refresh(int lowAmt) {
+        prods = ProdList.lowStock.query(lowAmt);
+        fireTableDataChanged();
+    }
+}
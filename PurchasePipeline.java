@@ -0,0 +1,115 @@
+/*************************************************************************************
+ * PurchasePipeline
+ * -----------------------------------------------------------------------------------
+ * Runs purchases on a pool of worker threads instead of the thread which asked for
+ * them, so the register window never waits on a lookup, a lock or the sales journal.
+ * A worker does not wait on the journal either: it sells and goes on to the next
+ * purchase, and the answer is given once the journal has the sale on disk.
+ * Purchases wait in a bounded queue. When the queue is full a new purchase is
+ * turned away right away instead of piling up, and the caller can show that the
+ * register is busy. It has nothing to do with Swing, so it also works for a
+ * register without any window. Purchases can also go to a store server through a
+ * RegisterClient, baskets need a local Register. A purchase which throws is still
+ * answered, with REGISTER_ERROR, so the caller is never left waiting and the
+ * worker lives on.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.*;                      // For Arrays
+import java.util.concurrent.*;           // For the worker pool and queue
+import java.util.concurrent.atomic.*;    // For AtomicBoolean
+import java.util.function.*;             // For Consumer
+
+class PurchasePipeline {
+    // The answer to a purchase which threw or could not be saved
+    private static final String ERROR = PurchStatus.REGISTER_ERROR.getMsg();
+
+    // Runs one purchase and gives its message to done, or null if the sale
+    // could not be saved, such as Register.Purchase
+    interface Purchaser {
+        public void Purchase(String n, int c, Consumer<String> done);
+    }
+
+    private final Register reg;                    // Register for baskets, or null
+    private final Purchaser buy;                   // Runs the purchases
+    private final ArrayBlockingQueue<Runnable> queue; // Purchases waiting to run
+    private final ThreadPoolExecutor pool;          // The worker threads
+
+    // Create a pipeline with the given number of workers and room for the given
+    // number of waiting purchases
+    PurchasePipeline(Register r, int workers, int capacity) {
+        this(r, r::Purchase, workers, capacity);
+    }
+    // Create a pipeline which sends purchases to a store server
+    PurchasePipeline(RegisterClient c, int workers, int capacity) {
+        this(null, (n, k, done) -> done.accept(c.Purchase(n, k)), workers, capacity);
+    }
+    private PurchasePipeline(Register r, Purchaser p, int workers, int capacity) {
+        reg = r;
+        buy = p;
+        queue = new ArrayBlockingQueue<>(capacity);
+        ThreadFactory tf = task -> {
+            Thread t = new Thread(task, "Purchase worker");
+            t.setDaemon(true); // Do not keep the program open
+            return t;
+        };
+        // AbortPolicy makes execute throw when the queue is full
+        pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS, queue,
+                                      tf, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Queue a purchase. The message from Register.Purchase is given to done on
+    // a worker thread, or on the journal's thread once the sale is on disk.
+    // Returns false, without queueing, if the queue is full.
+    public boolean submit(String n, int c, Consumer<String> done) {
+        try {
+            pool.execute(() -> {
+                // Answered once, even if the purchase throws after answering
+                AtomicBoolean answered = new AtomicBoolean();
+                Consumer<String> once = msg -> {
+                    if (answered.compareAndSet(false, true))
+                        done.accept(msg != null ? msg : ERROR);
+                };
+                try {
+                    buy.Purchase(n, c, once);
+                } catch (RuntimeException e) {
+                    failed(e);
+                    once.accept(null);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+    // Queue a basket, the same as submit but with a status for every line.
+    // Only a pipeline with a local Register takes baskets.
+    public boolean submit(Basket b, Consumer<PurchStatus[]> done) {
+        try {
+            pool.execute(() -> {
+                PurchStatus res[];
+                try {
+                    res = reg.Purchase(b);
+                } catch (RuntimeException e) {
+                    failed(e);
+                    res = new PurchStatus[b.size()];
+                    Arrays.fill(res, PurchStatus.REGISTER_ERROR);
+                }
+                done.accept(res);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+    // Report a purchase which threw, since only its status reaches the caller
+    private static void failed(RuntimeException e) {
+        System.err.println("Purchase failed: " + e);
+    }
+    // Retrieve the number of purchases waiting for a worker
+    public int getQueued() { return queue.size(); }
+    // Retrieve the number of purchases the queue can hold
+    public int getCapacity() { return queue.size() + queue.remainingCapacity(); }
+    // Finish the queued purchases and stop the workers
+    public void shutdown() { pool.shutdown(); }
+}
@@ -0,0 +1,106 @@
+/*************************************************************************************
+ * RegisterClient
+ * -----------------------------------------------------------------------------------
+ * A register lane for a store run by a StoreServer, maybe in another program. It
+ * has the same purchase, lookup and day switch calls as the local Register and
+ * SupplySummary, sent as requests over one connection (see StoreServer for the
+ * protocol). One request is sent at a time and each waits for its reply, for at
+ * most TIMEOUT_MS, after which the connection is closed. The window uses it to
+ * act as a thin client when started with -Dpetsupply.connect=<host>:<port>.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                         // For the streams
+import java.net.*;                        // For Socket
+import java.nio.charset.StandardCharsets; // For reading and writing lines
+
+class RegisterClient implements Closeable {
+    // Longest wait for a reply, set with -Dpetsupply.connect.timeout=<ms>
+    static final int TIMEOUT_MS = Integer.getInteger("petsupply.connect.timeout", 10_000);
+    private final Socket sock;
+    private final BufferedReader in;
+    private final Writer out;
+    private volatile long dlyCents; // Money earned today, from the last reply
+
+    // Connect to a store server
+    RegisterClient(String host, int port) throws IOException {
+        sock = new Socket(host, port);
+        sock.setTcpNoDelay(true);
+        sock.setSoTimeout(TIMEOUT_MS);
+        in = new BufferedReader(new InputStreamReader(sock.getInputStream(),
+                                                      StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream(),
+                                                        StandardCharsets.UTF_8));
+    }
+    // Connect to a store server given as host:port
+    static RegisterClient connect(String hostPort) throws IOException {
+        int c = hostPort.lastIndexOf(':');
+        if (c < 0)
+            return new RegisterClient(hostPort, StoreServer.DEFAULT_PORT);
+        return new RegisterClient(hostPort.substring(0, c),
+                                  Integer.parseInt(hostPort.substring(c + 1)));
+    }
+
+    // Send a request and return the reply without the OK in front
+    private synchronized String call(String req) throws IOException {
+        out.write(req);
+        out.write('\n');
+        out.flush();
+        String r;
+        try {
+            r = in.readLine();
+        } catch (SocketTimeoutException e) {
+            // A late reply would be taken for the next request's, so the
+            // connection is no use any more
+            sock.close();
+            throw new IOException("Store server did not answer in "
+                                  + TIMEOUT_MS + " ms", e);
+        }
+        if (r == null)
+            throw new EOFException("Store server closed the connection");
+        if (!r.startsWith("OK"))
+            throw new IOException("Store server: " + r);
+        return r.length() > 3 ? r.substring(3) : "";
+    }
+
+    // Purchase an amount of a product and return the purchase message, the
+    // same as Register.Purchase
+    public String Purchase(String n, int c) {
+        try {
+            String r = call("PURCHASE " + c + " " + n);
+            int sp = r.indexOf(' ');
+            dlyCents = Long.parseLong(r.substring(0, sp));
+            return r.substring(sp + 1);
+        } catch (IOException | RuntimeException e) {
+            return "Purchase Failed: Store Unreachable";
+        }
+    }
+    // Look up a product, returning its index or -1, the same as Register.Lookup
+    public int Lookup(String n) throws IOException {
+        String r = call("LOOKUP " + n);
+        int sp = r.indexOf(' ');
+        return Integer.parseInt(sp < 0 ? r : r.substring(0, sp));
+    }
+    // Return the day, the money earned today, the total money in cents and
+    // the number of products
+    public long[] Summary() throws IOException {
+        String f[] = call("SUMMARY").split(" ");
+        long s[] = new long[f.length];
+        for (int i = 0; i < f.length; i++)
+            s[i] = Long.parseLong(f[i]);
+        dlyCents = s[1];
+        return s;
+    }
+    // Switch the store to the next day and return the new day and the total
+    // money in cents
+    public long[] NextDay() throws IOException {
+        String f[] = call("NEXTDAY").split(" ");
+        dlyCents = 0;
+        return new long[] { Long.parseLong(f[0]), Long.parseLong(f[1]) };
+    }
+    // Retrieve the money earned today in cents, as of the last reply
+    public long getDlyCents() { return dlyCents; }
+
+    @Override
+    public void close() throws IOException { sock.close(); }
+}
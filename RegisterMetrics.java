@@ -0,0 +1,251 @@
+/*************************************************************************************
+ * RegisterMetrics
+ * -----------------------------------------------------------------------------------
+ * Counts purchases, failed purchases by reason and stockouts (sales which empty a
+ * shelf), and keeps latency histograms of lookups, purchases, day switches and
+ * table refreshes.
+ * The histograms have log-linear buckets the way HdrHistogram does: every power of
+ * two is split into 8 buckets, so a time is kept to within 12.5% whatever its size,
+ * in under 500 buckets. Each thread records into its own counts and buckets, so
+ * registers never share a cache line or wait on a lock to record. Reading merges
+ * every thread's values. Only the thread which owns them writes them, so a plain
+ * ordered write is enough and no compare-and-set is needed.
+ * Reading the clock costs more than the rest of the recording, so every purchase
+ * is counted but only one in SAMPLE purchases of each thread is timed. The
+ * percentiles of the timed purchases stand for all of them.
+ * Run with -Dpetsupply.metrics=false to leave out the recording entirely, and
+ * -Dpetsupply.metrics.sample=1 to time every purchase.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                        // For PrintStream
+import java.lang.management.*;           // For the platform MBean server
+import java.util.concurrent.*;           // For the recorder list and dump timer
+import java.util.concurrent.atomic.*;    // For AtomicLongArray
+import javax.management.*;               // For registering the MBean
+
+class RegisterMetrics implements RegisterMetricsMBean {
+    // False to record nothing, read once so the JIT can drop the recording
+    static final boolean ENABLED =
+                        !"false".equals(System.getProperty("petsupply.metrics"));
+    // What a latency was measured for
+    static final int LOOKUP = 0, LINEAR_SEARCH = 1, PURCHASE = 2, SWITCH_DAY = 3,
+                     REFRESH = 4;
+    static final String KIND_NAMES[] = { "lookup", "linear search", "purchase",
+                                         "day switch", "refresh" };
+    // Counts are one per PurchStatus, then stockouts
+    static final int STOCKOUT = PurchStatus.values().length;
+    static final int SUB_BITS = 3;                  // 8 buckets per power of two
+    static final int SUB = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB; // Enough for any long
+    // One in this many purchases is timed, rounded up to a power of two
+    static final int SAMPLE = Integer.highestOneBit(Math.max(1,
+                        Integer.getInteger("petsupply.metrics.sample", 16) * 2 - 1));
+
+    // The counts and buckets written by one thread
+    private static final class Recorder {
+        final AtomicLongArray counts = new AtomicLongArray(STOCKOUT + 1);
+        final AtomicLongArray hist = new AtomicLongArray(KIND_NAMES.length * BUCKETS);
+        int seen; // Purchases started on this thread, to pick which are timed
+        // Add one to a value. Only the owning thread writes, so an ordered write
+        // of the value plus one can not lose a count.
+        static void inc(AtomicLongArray a, int i) { a.lazySet(i, a.get(i) + 1); }
+    }
+    // Every thread's recorder, kept after the thread ends so its counts stay
+    private final ConcurrentLinkedQueue<Recorder> all = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Recorder> mine = ThreadLocal.withInitial(() -> {
+        Recorder r = new Recorder();
+        all.add(r);
+        return r;
+    });
+
+    // Return the time now in nanoseconds, or 0 when not recording
+    static long now() { return ENABLED ? System.nanoTime() : 0; }
+    // Return the bucket of a time
+    static int bucket(long v) {
+        if (v < SUB * 2)
+            return (int) Math.max(v, 0);
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB + (int) (v >>> shift) - SUB;
+    }
+    // Return the largest time which falls in a bucket
+    static long highest(int b) {
+        if (b < SUB * 2)
+            return b;
+        int shift = b / SUB - 1;
+        return ((long) (b % SUB + SUB + 1) << shift) - 1;
+    }
+
+    // Start a purchase. Return the time now if this purchase is one of those
+    // timed, or 0 if it is not.
+    public long startPurchase() {
+        if (!ENABLED || (++mine.get().seen & (SAMPLE - 1)) != 0)
+            return 0;
+        return System.nanoTime();
+    }
+    // Return the time now if the purchase started at the given time is timed
+    static long lap(long start) { return start != 0 ? System.nanoTime() : 0; }
+    // Record the status of a purchase, and its lookup and whole time if it was
+    // timed, given when it started and when its lookup was done. A purchase
+    // given as a product index passes its start as the lookup, as there was
+    // no lookup to time.
+    public void purchase(PurchStatus s, long start, long looked) {
+        if (!ENABLED)
+            return;
+        Recorder r = mine.get();
+        Recorder.inc(r.counts, s.ordinal());
+        if (start != 0) {
+            long end = System.nanoTime();
+            if (looked != start)
+                Recorder.inc(r.hist, LOOKUP * BUCKETS + bucket(looked - start));
+            Recorder.inc(r.hist, PURCHASE * BUCKETS + bucket(end - start));
+        }
+    }
+    // Record the status of a line which was not timed, such as a basket line
+    public void count(PurchStatus s) {
+        if (ENABLED)
+            Recorder.inc(mine.get().counts, s.ordinal());
+    }
+    // Record a sale which emptied a shelf
+    public void stockout() {
+        if (ENABLED)
+            Recorder.inc(mine.get().counts, STOCKOUT);
+    }
+    // Record how long something took, given when it started
+    public void time(int kind, long start) {
+        if (ENABLED)
+            Recorder.inc(mine.get().hist,
+                         kind * BUCKETS + bucket(System.nanoTime() - start));
+    }
+
+    // Return a count added up over every thread
+    public long getCount(int i) {
+        long n = 0;
+        for (Recorder r : all)
+            n += r.counts.get(i);
+        return n;
+    }
+    // Return the buckets of a kind of latency added up over every thread
+    public long[] merged(int kind) {
+        long b[] = new long[BUCKETS];
+        for (Recorder r : all)
+            for (int i = 0; i < BUCKETS; i++)
+                b[i] += r.hist.get(kind * BUCKETS + i);
+        return b;
+    }
+    // Return the time which the given fraction of a kind of latency are at or
+    // under, 0 if nothing was recorded
+    public long percentile(int kind, double p) {
+        return percentile(merged(kind), p);
+    }
+    static long percentile(long b[], double p) {
+        long total = 0;
+        for (long n : b)
+            total += n;
+        if (total == 0)
+            return 0;
+        long want = Math.max(1, (long) Math.ceil(total * p)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += b[i];
+            if (seen >= want)
+                return highest(i);
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    // Attributes shown through JMX
+    @Override public long getPurchases() { return getCount(PurchStatus.SUCCESS.ordinal()); }
+    @Override public long getInvalidName() { return getCount(PurchStatus.INVALID_NAME.ordinal()); }
+    @Override public long getInvalidAmounts() { return getCount(PurchStatus.INVALID_AMOUNT.ordinal()); }
+    @Override public long getAmountTooHigh() { return getCount(PurchStatus.AMOUNT_TOO_HIGH.ordinal()); }
+    @Override public long getBasketRejected() { return getCount(PurchStatus.NOT_APPLIED.ordinal()); }
+    @Override public long getRegisterErrors() { return getCount(PurchStatus.REGISTER_ERROR.ordinal()); }
+    @Override public long getStockouts() { return getCount(STOCKOUT); }
+    @Override public long getLookupP50Nanos() { return percentile(LOOKUP, 0.5); }
+    @Override public long getLookupP99Nanos() { return percentile(LOOKUP, 0.99); }
+    @Override public long getPurchaseP50Nanos() { return percentile(PURCHASE, 0.5); }
+    @Override public long getPurchaseP99Nanos() { return percentile(PURCHASE, 0.99); }
+    @Override public long getPurchaseP999Nanos() { return percentile(PURCHASE, 0.999); }
+    @Override public long getPurchaseMaxNanos() { return percentile(PURCHASE, 1); }
+    @Override public long getSwitchDayMaxNanos() { return percentile(SWITCH_DAY, 1); }
+    @Override public long getRefreshMaxNanos() { return percentile(REFRESH, 1); }
+
+    // Return every count and latency as text
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("purchases ").append(getPurchases())
+          .append(", invalid name ").append(getInvalidName())
+          .append(", invalid amount ").append(getInvalidAmounts())
+          .append(", amount too high ").append(getAmountTooHigh())
+          .append(", basket rejected ").append(getBasketRejected())
+          .append(", register errors ").append(getRegisterErrors())
+          .append(", stockouts ").append(getStockouts())
+          .append(", 1 in ").append(SAMPLE).append(" purchases timed\n");
+        for (int k = 0; k < KIND_NAMES.length; k++) {
+            long b[] = merged(k);
+            long total = 0;
+            for (long n : b)
+                total += n;
+            if (total == 0)
+                continue;
+            sb.append(KIND_NAMES[k]).append(": count ").append(total)
+              .append(", p50 ").append(percentile(b, 0.5))
+              .append("ns, p99 ").append(percentile(b, 0.99))
+              .append("ns, p99.9 ").append(percentile(b, 0.999))
+              .append("ns, max ").append(percentile(b, 1)).append("ns\n");
+        }
+        return sb.toString();
+    }
+
+    // Register with the platform MBean server, so JMX tools can read the values
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                          new ObjectName("petsupplymanager:type=RegisterMetrics"));
+        } catch (JMException e) {
+            // Not fatal, the values can still be dumped as text
+            System.err.println("Registering metrics MBean failed: " + e);
+        }
+    }
+    // Print the report to the given stream every given number of seconds, on a
+    // background thread
+    public void startDump(long seconds, PrintStream out) {
+        ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "Metrics dump");
+            t.setDaemon(true); // Do not keep the program open
+            return t;
+        });
+        ex.scheduleAtFixedRate(() -> out.print(getReport()), seconds, seconds,
+                               TimeUnit.SECONDS);
+    }
+
+    // Measure what recording adds to each purchase, in nanoseconds, from several
+    // threads at once. Run with -Dpetsupply.metrics=false to see the cost of the
+    // loop alone, or -Dpetsupply.metrics.sample=1 to time every purchase.
+    public static void main(String args[]) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int n = 20_000_000;
+        RegisterMetrics m = new RegisterMetrics();
+        for (int round = 0; round < 5; round++) { // Early rounds warm up the JIT
+            Thread ts[] = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                ts[t] = new Thread(() -> {
+                    for (int i = 0; i < n; i++) {
+                        long s = m.startPurchase();
+                        long l = lap(s);
+                        m.purchase(PurchStatus.SUCCESS, s, l);
+                    }
+                });
+                ts[t].start();
+            }
+            for (Thread t : ts)
+                t.join();
+            long ns = System.nanoTime() - start;
+            System.out.printf("round %d: %.1f ns per recorded purchase per thread%n",
+                              round, (double) ns / n);
+        }
+        System.out.print(m.getReport());
+    }
+}
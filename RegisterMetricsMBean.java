@@ -0,0 +1,30 @@
+/*************************************************************************************
+ * RegisterMetricsMBean
+ * -----------------------------------------------------------------------------------
+ * The values of RegisterMetrics shown through JMX, so a tool such as JConsole can
+ * watch the registers while the program runs. Times are in nanoseconds.
+ ************************************************************************************/
+
+package petsupplymanager;
+
+public interface RegisterMetricsMBean {
+    // Purchase counts
+    public long getPurchases();
+    public long getInvalidName();
+    public long getInvalidAmounts();
+    public long getAmountTooHigh();
+    public long getBasketRejected();
+    public long getRegisterErrors();
+    public long getStockouts();
+    // Latencies
+    public long getLookupP50Nanos();
+    public long getLookupP99Nanos();
+    public long getPurchaseP50Nanos();
+    public long getPurchaseP99Nanos();
+    public long getPurchaseP999Nanos();
+    public long getPurchaseMaxNanos();
+    public long getSwitchDayMaxNanos();
+    public long getRefreshMaxNanos();
+    // Every count and latency as text, the same as the periodic dump
+    public String getReport();
+}
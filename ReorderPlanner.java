@@ -0,0 +1,104 @@
+/*************************************************************************************
+ * ReorderPlanner
+ * -----------------------------------------------------------------------------------
+ * Decides which products to reorder and how many of each. Every product gets its own
+ * reorder point from how fast it has been selling: the units it sells per day (the
+ * moving average kept by SalesHistory) times the days a delivery takes plus a few
+ * safety days. A product at or below its reorder point is ordered up to enough for
+ * COVER_DAYS more days. A product with no stock left that has ever sold is always
+ * ordered, at least at MIN_RATE, however long it has been sold out. The plan lists
+ * those products with the fewest days of stock left first.
+ * The moving average is updated once per finished day from the day's sales, not on
+ * every purchase: a rate in units per day only has a new value when a day ends,
+ * and a register holding a product lock does no planner work at all. So the
+ * reorder points only change when a day ends, and they are recomputed then and
+ * kept in arrays. Recomputing is given a time budget. When the budget runs out on a
+ * large catalog the pass stops where it is and the next call carries on from there,
+ * so a day switch never waits long on the planner.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.Arrays;    // For growing arrays
+
+class ReorderPlanner {
+    static final int LEAD_DAYS = 3;    // Days a delivery takes to arrive
+    static final int SAFETY_DAYS = 2;  // Extra days of stock in case sales jump
+    static final int COVER_DAYS = 14;  // Days of sales an order should cover
+    static final int CHECK_EVERY = 1024; // Products between looks at the clock
+    // Products selling slower than this are not reordered at all
+    static final double MIN_RATE = 0.05;
+
+    private float rate[] = new float[16]; // Units sold per day of each product
+    private int rop[] = new int[16];      // Reorder point of each product
+    private int target[] = new int[16];   // Amount to order each product up to
+    private int passDay = -1;  // The history day the current pass works from
+    private int cursor;        // The next product the pass recomputes
+    private int left;          // Products the current pass has still to do
+
+    // Recompute reorder points, stopping once the given number of nanoseconds
+    // has gone by. A new finished day starts a new pass from wherever the last
+    // one stopped. Returns true if every product is up to date.
+    public synchronized boolean recompute(long budgetNanos) {
+        long start = System.nanoTime();
+        int s = ProdList.getListSize();
+        int day = ProdList.history.getLastDay();
+        if (day != passDay) {
+            passDay = day;
+            left = s;
+        }
+        if (s > rop.length) {
+            int n = Math.max(rop.length * 2, s);
+            rate = Arrays.copyOf(rate, n);
+            rop = Arrays.copyOf(rop, n);
+            target = Arrays.copyOf(target, n);
+        }
+        while (left > 0) {
+            for (int k = 0; k < CHECK_EVERY && left > 0; k++, left--) {
+                if (cursor >= s)
+                    cursor = 0;
+                double v = ProdList.history.rate(cursor, day);
+                // The rate of a product which sold out keeps shrinking on the
+                // days it has nothing to sell, so keep it on the plan instead
+                if (v < MIN_RATE)
+                    v = ProdList.getAmtOnShelf(cursor) == 0
+                        && ProdList.getNumSoldTot(cursor) > 0 ? MIN_RATE : 0;
+                rate[cursor] = (float) v;
+                rop[cursor] = (int) Math.ceil(v * (LEAD_DAYS + SAFETY_DAYS));
+                target[cursor] = (int) Math.ceil(v * (LEAD_DAYS + SAFETY_DAYS
+                                                      + COVER_DAYS));
+                cursor++;
+            }
+            if (System.nanoTime() - start >= budgetNanos)
+                break;
+        }
+        return left == 0;
+    }
+
+    // Retrieve the units a product sells per day
+    public synchronized float getRate(int i) { return i < rate.length ? rate[i] : 0; }
+    // Retrieve the reorder point of a product
+    public synchronized int getReorderPoint(int i) { return i < rop.length ? rop[i] : 0; }
+    // Retrieve how many of a product to order now, 0 if it is above its
+    // reorder point
+    public synchronized int getOrderAmt(int i) {
+        if (i >= rop.length || rop[i] == 0)
+            return 0;
+        int amt = ProdList.getAmtOnShelf(i);
+        return amt <= rop[i] ? target[i] - amt : 0;
+    }
+
+    // Return up to max products at or below their reorder point, the ones with
+    // the fewest days of stock left first
+    public synchronized int[] plan(int max) {
+        TopN heap = new TopN(max);
+        int s = Math.min(ProdList.getListSize(), rop.length);
+        for (int i = 0; i < s; i++) {
+            int amt = ProdList.getAmtOnShelf(i);
+            if (rop[i] == 0 || amt > rop[i])
+                continue;
+            // Fewer days left is a larger key, counted in thousandths of a day
+            heap.offer(i, -(long) (amt * 1000.0 / rate[i]));
+        }
+        return heap.result();
+    }
+}
@@ -0,0 +1,167 @@
+/*************************************************************************************
+ * SalesAnalytics
+ * -----------------------------------------------------------------------------------
+ * Reports over the whole catalog: the best products by money made or units sold,
+ * how fast each product sells (units per day), how many days its shelf stock will
+ * last at that speed, and ABC classes (A: the products making the first 80% of the
+ * money, B: the next 15%, C: the rest).
+ * Every report can run on one thread or split the catalog across the common
+ * fork-join pool with parallel streams of primitive ints. The top N reports keep a
+ * bounded heap of N products per thread instead of sorting the catalog. Reports
+ * read the product values without taking any product lock, so they never hold up
+ * a register; a report taken while registers are selling may be a sale or two
+ * behind.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.Arrays;             // For sorting the revenue values
+import java.util.function.*;         // For IntToLongFunction
+import java.util.stream.*;           // For IntStream
+
+// The n products with the largest keys seen so far, kept in a min-heap so a new
+// product only has to beat the smallest of them
+class TopN {
+    private final long key[];  // The heap, smallest key at the top
+    private final int prod[];  // The product of each key
+    private int size;          // Number of products in the heap
+
+    TopN(int n) {
+        key = new long[n];
+        prod = new int[n];
+    }
+    // Offer a product with a key, kept if it is one of the n largest so far
+    public void offer(int i, long k) {
+        int n = key.length;
+        if (size < n) { // Room left, sift the new entry up
+            int j = size++;
+            while (j > 0 && key[(j - 1) / 2] > k) {
+                key[j] = key[(j - 1) / 2];
+                prod[j] = prod[(j - 1) / 2];
+                j = (j - 1) / 2;
+            }
+            key[j] = k;
+            prod[j] = i;
+        } else if (n > 0 && k > key[0]) { // Replace the smallest, sift down
+            int j = 0;
+            while (true) {
+                int c = j * 2 + 1;
+                if (c >= n)
+                    break;
+                if (c + 1 < n && key[c + 1] < key[c])
+                    c++;
+                if (key[c] >= k)
+                    break;
+                key[j] = key[c];
+                prod[j] = prod[c];
+                j = c;
+            }
+            key[j] = k;
+            prod[j] = i;
+        }
+    }
+    // Offer every product kept by another heap, used to join threads' results
+    public void merge(TopN o) {
+        for (int j = 0; j < o.size; j++)
+            offer(o.prod[j], o.key[j]);
+    }
+    // Return the products kept, largest key first
+    public int[] result() {
+        // Order the few entries left from best to worst
+        Integer idx[] = new Integer[size];
+        for (int j = 0; j < size; j++)
+            idx[j] = j;
+        Arrays.sort(idx, (x, y) -> Long.compare(key[y], key[x]));
+        int r[] = new int[size];
+        for (int j = 0; j < size; j++)
+            r[j] = prod[idx[j]];
+        return r;
+    }
+}
+
+class SalesAnalytics {
+    static final double A_SHARE = 0.80; // Share of the money made by class A
+    static final double B_SHARE = 0.95; // Share made by classes A and B together
+
+    private SalesAnalytics() {} // Only static methods
+
+    // A stream over every product index, split across threads if parallel
+    private static IntStream prods(boolean parallel) {
+        IntStream s = IntStream.range(0, ProdList.getListSize());
+        return parallel ? s.parallel() : s;
+    }
+
+    // Return the n products with the largest key, largest first. Products with
+    // a key of 0 are left out.
+    public static int[] top(int n, IntToLongFunction key, boolean parallel) {
+        return prods(parallel).collect(() -> new TopN(n),
+                                       (t, i) -> {
+                                           long k = key.applyAsLong(i);
+                                           if (k > 0)
+                                               t.offer(i, k);
+                                       },
+                                       TopN::merge).result();
+    }
+    // Return the n products which made the most money, most first
+    public static int[] topByRevenue(int n, boolean parallel) {
+        return top(n, ProdList::getRevenue, parallel);
+    }
+    // Return the n products which sold the most units, most first
+    public static int[] topByUnits(int n, boolean parallel) {
+        return top(n, ProdList::getNumSoldTot, parallel);
+    }
+
+    // Return the units per day each product sold over the last given number of
+    // finished days
+    public static double[] velocity(int days, boolean parallel) {
+        int last = ProdList.history.getLastDay();
+        int first = Math.max(1, last - days + 1);
+        int n = Math.max(1, last - first + 1); // Fewer days if history is short
+        int s = ProdList.getListSize();
+        long units[] = new long[s];
+        ProdList.history.unitsInRange(first, last, units); // One lock for all
+        double v[] = new double[s];
+        prods(parallel).forEach(i -> v[i] = (double) units[i] / n);
+        return v;
+    }
+    // Return how many days each product's shelf stock lasts at the speed it sold
+    // over the last given number of days. A product which did not sell lasts
+    // forever (infinity).
+    public static double[] daysOfStock(int days, boolean parallel) {
+        double v[] = velocity(days, parallel);
+        prods(parallel).forEach(i -> v[i] = v[i] > 0 ?
+                ProdList.getAmtOnShelf(i) / v[i] : Double.POSITIVE_INFINITY);
+        return v;
+    }
+
+    // Return the ABC class ('A', 'B' or 'C') of every product by the money it
+    // made. The money values are sorted on their own to find the two cut off
+    // values, then each product is compared against them.
+    public static byte[] abc(boolean parallel) {
+        int s = ProdList.getListSize();
+        long rev[] = new long[s];
+        prods(parallel).forEach(i -> rev[i] = ProdList.getRevenue(i));
+        long sorted[] = rev.clone();
+        if (parallel)
+            Arrays.parallelSort(sorted);
+        else
+            Arrays.sort(sorted);
+        long total = parallel ? LongStream.of(sorted).parallel().sum()
+                              : LongStream.of(sorted).sum();
+        // Walk down from the largest until each share of the money is reached
+        long cutA = Long.MAX_VALUE, cutB = Long.MAX_VALUE, sum = 0;
+        for (int j = s - 1; j >= 0 && sorted[j] > 0; j--) {
+            sum += sorted[j];
+            if (cutA == Long.MAX_VALUE && sum >= total * A_SHARE)
+                cutA = sorted[j];
+            if (sum >= total * B_SHARE) {
+                cutB = sorted[j];
+                break;
+            }
+        }
+        final long a = cutA, b = cutB;
+        byte cls[] = new byte[s];
+        prods(parallel).forEach(i -> cls[i] = (byte) (rev[i] > 0 && rev[i] >= a ? 'A'
+                                      : rev[i] > 0 && rev[i] >= b ? 'B' : 'C'));
+        return cls;
+    }
+}
@@ -0,0 +1,280 @@
+/*************************************************************************************
+ * SalesHistory
+ * -----------------------------------------------------------------------------------
+ * Keeps how much of each product sold, and the money it made, on every past day, so
+ * a day's sales are not lost when the day switches. Each product that ever sold has
+ * a series holding only the days it sold on. A day is stored as the gap since the
+ * last day, the units and the cents, each written as a variable length number
+ * (varint), so most days take three or four bytes.
+ * Every 32 days in a series there is a checkpoint with the day, where that day
+ * starts in the bytes, and the units and cents sold before it. Totals up to a day
+ * are found by a binary search on the checkpoints and decoding at most 32 days, so
+ * "units and revenue of a product from day A to day B" costs the same for a week
+ * or for years of history.
+ * Each series also keeps an exponentially weighted moving average (EWMA) of the
+ * units sold per day, updated as each day is added. Days a product did not sell
+ * are counted when the rate is read, so finishing a day only touches the products
+ * which sold that day.
+ * When given a file, each finished day is appended to it and read back on startup.
+ * -----------------------------------------------------------------------------------
+ * FILE
+ *  One block per day: int day, int number of products, then for each product the
+ *  varint gap since the previous product index, the varint units and varint cents
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;           // For IOException
+import java.nio.*;          // For ByteBuffer
+import java.nio.channels.*; // For FileChannel
+import java.nio.file.*;     // For Path
+import java.util.Arrays;    // For growing arrays
+
+class SalesHistory {
+    static final int CHECK_EVERY = 32; // Days between checkpoints in a series
+    static final double ALPHA = 0.2;   // Weight of the newest day in the rate
+
+    // A growable array of bytes holding varints
+    private static final class Bytes {
+        byte b[] = new byte[16];
+        int len;
+        // Write a non-negative number, 7 bits per byte, high bit set if more follow
+        void putVar(long v) {
+            if (len + 10 > b.length)
+                b = Arrays.copyOf(b, Math.max(b.length * 2, len + 10));
+            while ((v & ~0x7fL) != 0) {
+                b[len++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            b[len++] = (byte) v;
+        }
+    }
+    // Reads varints from a byte array
+    private static final class Reader {
+        final byte b[];
+        int pos;
+        Reader(byte data[], int p) { b = data; pos = p; }
+        long getVar() {
+            long v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte x = b[pos++];
+                v |= (long) (x & 0x7f) << shift;
+                if (x >= 0)
+                    return v;
+            }
+        }
+    }
+
+    // The days one product sold on
+    private static final class Series {
+        final Bytes data = new Bytes(); // Day gap, units and cents of each day
+        int count;                      // Number of days stored
+        int lastDay;                    // The newest day stored
+        long units, cents;              // Totals over every day stored
+        double rate;                    // EWMA of units per day as of lastDay
+        // Checkpoint k is at day number k * CHECK_EVERY of the series
+        int cpDay[] = new int[1];       // The day of the checkpoint
+        int cpOff[] = new int[1];       // Where that day starts in data
+        long cpUnits[] = new long[1];   // Units sold before that day
+        long cpCents[] = new long[1];   // Cents made before that day
+
+        // Add a day, which must be after every day already stored
+        void add(int day, long u, long c) {
+            int gap = day - lastDay;
+            if (count % CHECK_EVERY == 0) { // Start a checkpoint
+                int k = count / CHECK_EVERY;
+                if (k == cpDay.length) {
+                    cpDay = Arrays.copyOf(cpDay, k * 2);
+                    cpOff = Arrays.copyOf(cpOff, k * 2);
+                    cpUnits = Arrays.copyOf(cpUnits, k * 2);
+                    cpCents = Arrays.copyOf(cpCents, k * 2);
+                }
+                cpDay[k] = day;
+                cpOff[k] = data.len;
+                cpUnits[k] = units;
+                cpCents[k] = cents;
+                gap = day; // A checkpoint's day is stored whole
+            }
+            data.putVar(gap);
+            data.putVar(u);
+            data.putVar(c);
+            // Days with no sales since the last one each shrink the rate
+            rate = rate * Math.pow(1 - ALPHA, day - lastDay) + ALPHA * u;
+            count++;
+            lastDay = day;
+            units += u;
+            cents += c;
+        }
+        // Put the units and cents sold on every day up to and including d
+        void upTo(int d, long out[]) {
+            out[0] = 0;
+            out[1] = 0;
+            if (count == 0 || d < cpDay[0])
+                return;
+            if (d >= lastDay) { // The whole series
+                out[0] = units;
+                out[1] = cents;
+                return;
+            }
+            int lo = 0, hi = (count - 1) / CHECK_EVERY; // Last checkpoint <= d
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (cpDay[mid] <= d)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            long u = cpUnits[lo], c = cpCents[lo];
+            Reader r = new Reader(data.b, cpOff[lo]);
+            int day = 0;
+            for (int n = lo * CHECK_EVERY; n < count; n++) {
+                if (n % CHECK_EVERY == 0) // A checkpoint's day is stored whole
+                    day = 0;
+                day += (int) r.getVar();
+                if (day > d)
+                    break;
+                u += r.getVar();
+                c += r.getVar();
+            }
+            out[0] = u;
+            out[1] = c;
+        }
+    }
+
+    private Series series[] = new Series[16]; // Indexed by product, null if unsold
+    private int lastDay;                      // The newest day added
+    private FileChannel file;                 // Days are appended here, or null
+
+    // Load the days saved in a file, then append every new day to it
+    public synchronized void open(Path p) throws IOException {
+        file = FileChannel.open(p, StandardOpenOption.CREATE,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = file.size();
+        if (size > 0) {
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && file.read(buf) >= 0) {
+                // Read the whole file
+            }
+            byte all[] = buf.array();
+            Reader r = new Reader(all, 0);
+            long good = 0; // End of the last whole block
+            try {
+                while (r.pos + 8 <= all.length) {
+                    int day = ByteBuffer.wrap(all, r.pos, 8).getInt();
+                    int n = ByteBuffer.wrap(all, r.pos + 4, 4).getInt();
+                    r.pos += 8;
+                    int indx = 0;
+                    // Decode the block before adding it, so a block cut off by a
+                    // crash is dropped whole
+                    long block[] = new long[n * 3];
+                    for (int j = 0; j < n; j++) {
+                        indx += (int) r.getVar();
+                        block[j * 3] = indx;
+                        block[j * 3 + 1] = r.getVar();
+                        block[j * 3 + 2] = r.getVar();
+                    }
+                    for (int j = 0; j < n; j++)
+                        addOne((int) block[j * 3], day, block[j * 3 + 1],
+                               block[j * 3 + 2]);
+                    lastDay = day;
+                    good = r.pos;
+                }
+            } catch (ArrayIndexOutOfBoundsException e) {
+                // The last block was cut off by a crash
+            }
+            file.truncate(good);
+        }
+        file.position(file.size());
+    }
+
+    // Add every sale of a finished day. Days already in the history, such as
+    // ones replayed from the sales journal on startup, are skipped.
+    public synchronized void addDay(DayLedger led) throws IOException {
+        int day = led.getDay();
+        if (day <= lastDay)
+            return;
+        Bytes block = new Bytes(); // The day as it is saved to the file
+        int n = 0, prev = 0;
+        for (int i = led.nextSold(0); i >= 0; i = led.nextSold(i + 1)) {
+            addOne(i, day, led.getSold(i), led.getCents(i));
+            block.putVar(i - prev);
+            block.putVar(led.getSold(i));
+            block.putVar(led.getCents(i));
+            prev = i;
+            n++;
+        }
+        lastDay = day;
+        if (file != null) {
+            ByteBuffer buf = ByteBuffer.allocate(8 + block.len);
+            buf.putInt(day).putInt(n).put(block.b, 0, block.len).flip();
+            while (buf.hasRemaining())
+                file.write(buf);
+            file.force(false);
+        }
+    }
+    // Add one product's sales on a day to its series
+    private void addOne(int indx, int day, long u, long c) {
+        if (indx >= series.length)
+            series = Arrays.copyOf(series, Math.max(series.length * 2, indx + 1));
+        if (series[indx] == null)
+            series[indx] = new Series();
+        series[indx].add(day, u, c);
+    }
+
+    // Retrieve the newest day in the history
+    public synchronized int getLastDay() { return lastDay; }
+    // Return the units sold and cents made by a product from day a to day b
+    public synchronized long[] range(int indx, int a, int b) {
+        long r[] = new long[2];
+        if (indx >= series.length || series[indx] == null || b < a)
+            return r;
+        long before[] = new long[2];
+        series[indx].upTo(b, r);
+        series[indx].upTo(a - 1, before);
+        r[0] -= before[0];
+        r[1] -= before[1];
+        return r;
+    }
+    // Put the units each product sold from day a to day b into out, indexed by
+    // product, for every product out has room for. The whole catalog is read
+    // under one lock with no arrays made per product.
+    public synchronized void unitsInRange(int a, int b, long out[]) {
+        long r[] = new long[2], before[] = new long[2];
+        int n = Math.min(out.length, series.length);
+        for (int i = 0; i < n; i++) {
+            Series s = series[i];
+            if (s == null || s.lastDay < a || b < a) {
+                out[i] = 0;
+                continue;
+            }
+            s.upTo(b, r);
+            s.upTo(a - 1, before);
+            out[i] = r[0] - before[0];
+        }
+        Arrays.fill(out, n, out.length, 0);
+    }
+    // Return the EWMA of the units a product sold per day, as of day d
+    public synchronized double rate(int indx, int d) {
+        if (indx >= series.length || series[indx] == null)
+            return 0;
+        Series s = series[indx];
+        return d > s.lastDay ? s.rate * Math.pow(1 - ALPHA, d - s.lastDay) : s.rate;
+    }
+    // Return the n products which sold the most units (or made the most money,
+    // if byCents) from day a to day b, best first. A min-heap of n entries is
+    // kept, so the catalog is never sorted.
+    public synchronized int[] top(int n, int a, int b, boolean byCents) {
+        TopN heap = new TopN(n);
+        long r[] = new long[2], before[] = new long[2];
+        for (int i = 0; i < series.length; i++) {
+            Series s = series[i];
+            if (s == null || s.lastDay < a)
+                continue;
+            s.upTo(b, r);
+            s.upTo(a - 1, before);
+            long k = byCents ? r[1] - before[1] : r[0] - before[0];
+            if (k > 0)
+                heap.offer(i, k);
+        }
+        return heap.result();
+    }
+}
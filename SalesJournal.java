@@ -0,0 +1,585 @@
+/*************************************************************************************
+ * SalesJournal
+ * -----------------------------------------------------------------------------------
+ * Keeps the stock and sales values of ProdList, the daily money and the day count
+ * across runs of the program. Every purchase, restock and day switch is appended
+ * to a binary journal file as a fixed size record. Records collect in a buffer
+ * which a background thread writes and forces to disk. A register waits for the
+ * force holding its record before reporting the purchase done (sync), so nothing
+ * reported is lost in a crash. While one force runs the next records collect, so
+ * however many registers wait they share one force per batch (group commit).
+ * Run with -Dpetsupply.journal.async=true to report purchases without waiting and
+ * force every few milliseconds instead: faster on a slow disk, but a crash can
+ * lose the last purchases reported as done.
+ * Every day switch, and when the program exits, a snapshot of the product values is
+ * written and a new, empty journal file is started. Only switching to the new
+ * journal happens while every product lock is held, which takes the same time for
+ * any catalog. The values are then copied one lock stripe at a time while
+ * registers sell into the new journal, and each stripe notes how many records of
+ * the new journal its copy already holds, so replay skips those. The snapshot
+ * file is written from the copies. Until it is on disk the old snapshot and the
+ * journals still hold every sale. On startup the snapshot is loaded and the
+ * journals written after it are replayed in order.
+ * -----------------------------------------------------------------------------------
+ * FILES (in the data directory)
+ *  catalog.snapshot : The product values, day and money when the snapshot was made,
+ *                     the generation of the journal which follows it and, for
+ *                     each lock stripe, how many records of that journal are
+ *                     already in the stripe's values
+ *  sales.<g>.journal : The records written since the snapshot of generation g,
+ *                      up to the next snapshot
+ *  sales.history : Every finished day's sales, kept by SalesHistory
+ *  catalog.bin : The products after a catalog update, in the binary format of
+ *                ProdStore. It is loaded before the snapshot, so the snapshot and
+ *                journal indexes refer to the same products.
+ * RECORDS (16 bytes)
+ *  Purchase   : int 1 + day * 256, int product index, int amount, int price in
+ *               cents. The day is the one the sale was counted in, which can be
+ *               the next day when the sale lands just before a day switch record.
+ *  Day switch : int 2, int new day, long total money in cents
+ *  Restock    : int 3, int product index, long amount put on the shelf
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;           // For IOException
+import java.nio.*;          // For ByteBuffer
+import java.nio.channels.*; // For FileChannel
+import java.nio.file.*;     // For Path and Files
+import java.util.concurrent.locks.*; // For the lock around file writes
+
+class SalesJournal implements Closeable {
+    static final int REC_SIZE = 16;        // Size of every record in bytes
+    static final int PURCHASE = 1;         // Record type of a purchase
+    static final int DAY_SWITCH = 2;       // Record type of a day switch
+    static final int RESTOCK = 3;          // Record type of a restock
+    static final int MAGIC = 0x50534d34;   // Marks a snapshot file ("PSM4")
+    static final int STRIPES = ProdList.STRIPES;
+    static final long FLUSH_MS = 5;        // How often the buffer is written
+                                           // when async
+
+    private final Path dir;          // The data directory
+    private FileChannel chan;        // The open journal file
+    private long gen;                // The generation of the open journal
+    private long snapGen;            // The generation the snapshot file starts at
+    // Journals a snapshot has started a new one after, each with the records
+    // still to be written to it. The flusher writes, forces and closes them
+    // before writing anything newer.
+    private java.util.ArrayList<Retired> retired = new java.util.ArrayList<>();
+    private long finishedGen;        // Highest generation forced and closed
+    // Records waiting to be written, and the buffer the flusher is writing
+    private ByteBuffer cur = ByteBuffer.allocateDirect(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(1 << 16);
+    // Held while writing to the file. It is always taken while holding the
+    // journal's own lock, so buffers reach the file in the order they filled.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private IOException failed;      // Set when a write fails, stops new records
+    private boolean closed;          // Set by close, stops the flusher
+    private final Thread flusher;    // Writes the buffer in the background
+    // Report purchases before they are forced, read when the journal opens
+    private final boolean async = Boolean.getBoolean("petsupply.journal.async");
+    private long appended;           // Number of records appended
+    private long genBase;            // appended less the records in the open journal
+    private long forced;             // Number of those forced to disk
+    // Callbacks waiting for a force, with the number of records each waits for,
+    // in the order they came
+    private final java.util.ArrayDeque<Waiter> waiting = new java.util.ArrayDeque<>();
+
+    // A journal which is no longer written to, once its last records are
+    private static final class Retired {
+        final long gen;
+        final FileChannel chan;
+        final ByteBuffer buf;
+        Retired(long g, FileChannel c, ByteBuffer b) { gen = g; chan = c; buf = b; }
+    }
+    // The values a snapshot saves, copied a stripe at a time under that
+    // stripe's lock so the file can be written with no lock held
+    private static final class Snap {
+        long gen;                    // The journal which follows the snapshot
+        int day;
+        long ttl, dly;               // Total money and money made today
+        int n;                       // Number of products
+        int amt[], sold[], soldTot[];
+        long rev[], cents[];
+        // Records of journal gen already in each stripe's values
+        final long pos[] = new long[STRIPES];
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16); // Next buffer
+        // Make the arrays, once n is known and with no lock held
+        void alloc() {
+            amt = new int[n];
+            sold = new int[n];
+            soldTot = new int[n];
+            rev = new long[n];
+            cents = new long[n];
+        }
+    }
+
+    // A callback run once the first pos records are forced
+    private static final class Waiter {
+        final long pos;
+        final Runnable r;
+        Waiter(long p, Runnable run) { pos = p; r = run; }
+    }
+
+    // The day and total money, recovered on startup and then kept current by
+    // the day switch records
+    private int day = 1;             // The current day
+    private long ttlCents;           // The total money before today in cents
+    // Sales replayed before the switch to the day they were counted in, each
+    // as product index, amount and price in cents
+    private final java.util.ArrayList<int[]> early = new java.util.ArrayList<>();
+
+    // Open the journal in the given directory, loading the snapshot and
+    // replaying the journal into ProdList before any new records are written
+    SalesJournal(Path d) throws IOException {
+        dir = d;
+        Files.createDirectories(dir);
+        Path cat = dir.resolve("catalog.bin");
+        if (Files.exists(cat)) // Products saved by a catalog update
+            CatalogIO.load(cat);
+        ProdList.history.open(dir.resolve("sales.history"));
+        recover();
+        flusher = new Thread(this::flushLoop, "SalesJournal flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+    // Retrieve the recovered day
+    public int getDay() { return day; }
+    // Retrieve the recovered total money in cents
+    public long getTtlCents() { return ttlCents; }
+    // Retrieve the recovered money earned today in cents
+    public long getDlyCents() { return ProdList.today.getCents(); }
+
+    // Path of the journal file of a generation
+    private Path journalPath(long g) { return dir.resolve("sales." + g + ".journal"); }
+
+    // Append a purchase record counted in the given day. The caller holds the
+    // product's lock.
+    public void appendPurchase(int d, int indx, int c, int unitCents) {
+        append(PURCHASE | d << 8, indx, ((long) c << 32) | (unitCents & 0xffffffffL));
+    }
+    // Append a day switch record with the new day and the new total money
+    public void appendDaySwitch(int d, long ttl) {
+        append(DAY_SWITCH, d, ttl);
+    }
+    // Append a restock record. The caller holds the product's lock.
+    public void appendRestock(int indx, int c) {
+        append(RESTOCK, indx, c);
+    }
+    // Put one record into the buffer, writing the buffer first if it is full
+    private synchronized void append(int type, int a, long b) {
+        if (failed != null)
+            throw new IllegalStateException("Sales journal write failed", failed);
+        if (closed)
+            throw new IllegalStateException("Sales journal is closed");
+        if (cur.remaining() < REC_SIZE) { // Full, write it here and wait
+            writeLock.lock();
+            try {
+                if (!retired.isEmpty()) { // Older records go first
+                    finishedGen = finishRetired(retired);
+                    notifyAll();
+                }
+                writeBuffer(chan, cur);
+            } catch (IOException e) {
+                failed = e;
+                throw new IllegalStateException("Sales journal write failed", e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        cur.putInt(type).putInt(a).putLong(b);
+        if (appended++ == forced) // The flusher is waiting for records
+            notifyAll();
+        if (type == DAY_SWITCH) {
+            day = a;
+            ttlCents = b;
+        }
+    }
+    // Wait until every record appended so far is forced to disk. Call it after
+    // letting go of the product locks, so other registers keep selling while
+    // this one waits. Returns at once when async.
+    public synchronized void sync() {
+        long want = appended;
+        boolean interrupted = false;
+        while (!async && forced < want && failed == null && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) { // Finish waiting, keep the flag
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        if (forced < want && failed != null)
+            throw new IllegalStateException("Sales journal write failed", failed);
+    }
+    // Run r on the flusher once every record appended so far is forced, instead
+    // of waiting for it on this thread. It runs at once when async or when there
+    // is nothing to wait for. It also runs if the journal fails, which it can
+    // check with isFailed.
+    public void whenForced(Runnable r) {
+        synchronized (this) {
+            if (!async && forced < appended && failed == null && !closed) {
+                waiting.add(new Waiter(appended, r));
+                return;
+            }
+        }
+        r.run();
+    }
+    // Return true if a write failed, so records may not be on disk
+    public synchronized boolean isFailed() { return failed != null; }
+    // Take the callbacks whose records are forced, or all of them once the
+    // journal failed or closed. Called holding the journal's lock.
+    private java.util.List<Runnable> released() {
+        java.util.List<Runnable> ready = new java.util.ArrayList<>();
+        while (!waiting.isEmpty() && (waiting.peek().pos <= forced
+                                      || failed != null || closed))
+            ready.add(waiting.poll().r);
+        return ready;
+    }
+    // Run callbacks taken by released, outside the journal's lock
+    private static void run(java.util.List<Runnable> ready) {
+        for (Runnable r : ready) {
+            try {
+                r.run();
+            } catch (RuntimeException e) { // Keep the flusher going
+                System.err.println("Sales journal callback failed: " + e);
+            }
+        }
+    }
+    // Write everything in a buffer to a journal file and empty it
+    private static void writeBuffer(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+    // Write, force and close the retired journals, oldest first, so no newer
+    // record can reach the disk before them. Returns the newest generation
+    // finished, or -1 if there were none. Called holding writeLock.
+    private static long finishRetired(java.util.List<Retired> rs) throws IOException {
+        long g = -1;
+        for (Retired r : rs) {
+            writeBuffer(r.chan, r.buf);
+            r.chan.force(false);
+            r.chan.close();
+            g = r.gen;
+        }
+        rs.clear();
+        return g;
+    }
+    // Background loop: wait for records, swap out the filled buffer, then write
+    // and force it. Registers only hold the journal's lock for the swap, and the
+    // records appended while one force runs go out together in the next.
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer out;
+            FileChannel ch;
+            java.util.ArrayList<Retired> rs;
+            long upTo; // Records which will be on disk after this force
+            try {
+                if (async)
+                    Thread.sleep(FLUSH_MS);
+                synchronized (this) {
+                    while (forced == appended && retired.isEmpty() && !closed
+                           && failed == null)
+                        wait();
+                    if (closed || failed != null)
+                        return;
+                    out = cur;
+                    cur = spare;
+                    spare = out;
+                    ch = chan;
+                    rs = retired;
+                    retired = new java.util.ArrayList<>();
+                    upTo = appended;
+                    writeLock.lock(); // Taken before new records can be written
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            IOException err = null;
+            long fin = -1; // Newest retired journal finished
+            try {
+                fin = finishRetired(rs);
+                writeBuffer(ch, out);
+                ch.force(false);
+            } catch (IOException e) {
+                err = e;
+            } finally {
+                writeLock.unlock(); // Before the journal's lock, as appenders take them
+            }
+            java.util.List<Runnable> ready;
+            synchronized (this) {
+                if (err == null)
+                    forced = Math.max(forced, upTo);
+                else
+                    failed = err;
+                finishedGen = Math.max(finishedGen, fin); // Wakes a snapshot too
+                ready = released();
+                notifyAll(); // Wake the registers waiting in sync
+            }
+            run(ready);
+            if (err != null) {
+                System.err.println("Sales journal write failed: " + err);
+                return;
+            }
+        }
+    }
+
+    // Save the products to catalog.bin after a catalog update, then take a
+    // snapshot so the amounts and new products match it on the next start
+    public void saveCatalog() throws IOException {
+        Path tmp = dir.resolve("catalog.bin.tmp");
+        ProdList.store.save(tmp);
+        Files.move(tmp, dir.resolve("catalog.bin"),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Snapshot();
+    }
+    // Start a new journal file and write a snapshot of the current values. All
+    // product locks are held only while the journal is switched, so no purchase
+    // is half in the old journal. Holding SupplySummary's lock keeps a day switch
+    // from running while the values are copied.
+    public void Snapshot() throws IOException {
+        synchronized (SupplySummary.class) {
+            Snap s = new Snap();
+            // Opened first, so the locks are held for no system call
+            FileChannel next = FileChannel.open(journalPath(gen + 1),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                rotateLocked(0, s, next);
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+            s.alloc();
+            for (int k = 0; k < STRIPES; k++)
+                copyStripe(k, s);
+            writeSnapshot(s);
+            synchronized (this) {
+                // The old journals are in the snapshot now, delete them once
+                // the flusher has closed them
+                while (finishedGen < s.gen - 1 && failed == null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) { // Leave them for recovery
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (finishedGen < s.gen - 1)
+                    return;
+            }
+            for (long g = snapGen; g < s.gen; g++)
+                Files.deleteIfExists(journalPath(g));
+            snapGen = s.gen;
+        }
+    }
+    // Take the product locks one at a time, then switch to the new journal
+    private void rotateLocked(int k, Snap s, FileChannel next) throws IOException {
+        if (k < STRIPES) {
+            synchronized (ProdList.locks[k]) {
+                rotateLocked(k + 1, s, next);
+            }
+            return;
+        }
+        synchronized (this) {
+            if (failed != null)
+                throw new IOException("Sales journal write failed", failed);
+            // The flusher finishes the old journal with what is buffered
+            retired.add(new Retired(gen, chan, cur));
+            cur = s.buf;
+            chan = next;
+            gen++;
+            genBase = appended;
+            notifyAll();
+            s.gen = gen;
+            s.day = day;
+            s.ttl = ttlCents;
+        }
+        s.n = ProdList.getListSize(); // Can not change while the locks are held
+    }
+    // Copy the values of one stripe's products holding only its lock, with the
+    // number of records of the new journal they already hold
+    private void copyStripe(int k, Snap s) {
+        ProdStore st = ProdList.store;
+        DayLedger led = ProdList.today; // Can not switch while Snapshot runs
+        long dly = 0;
+        synchronized (ProdList.locks[k]) {
+            synchronized (this) {
+                s.pos[k] = appended - genBase;
+            }
+            for (int i = k; i < s.n; i += STRIPES) {
+                s.amt[i] = st.getAmtOnShelf(i);
+                s.soldTot[i] = st.getNumSoldTot(i);
+                s.rev[i] = st.getRevTot(i);
+                s.sold[i] = led.getSold(i);
+                s.cents[i] = led.getCents(i);
+                dly += s.cents[i];
+            }
+        }
+        s.dly += dly; // The daily money as of each stripe's copy
+    }
+    // Write the snapshot file, through a temporary file so a crash can never
+    // leave a half written snapshot
+    private void writeSnapshot(Snap s) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(36 + STRIPES * 8 + s.n * 28);
+        buf.putInt(MAGIC).putLong(s.gen).putInt(s.day).putLong(s.ttl).putLong(s.dly)
+           .putInt(s.n);
+        for (int k = 0; k < STRIPES; k++)
+            buf.putLong(s.pos[k]);
+        for (int i = 0; i < s.n; i++) {
+            buf.putInt(s.amt[i]);
+            buf.putInt(s.sold[i]);
+            buf.putInt(s.soldTot[i]);
+            buf.putLong(s.rev[i]);
+            buf.putLong(s.cents[i]);
+        }
+        buf.flip();
+        Path tmp = dir.resolve("catalog.snapshot.tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining())
+                out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, dir.resolve("catalog.snapshot"),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Load the snapshot if there is one, then replay the journals after it
+    private void recover() throws IOException {
+        Path snap = dir.resolve("catalog.snapshot");
+        long pos[] = new long[STRIPES]; // Records of journal gen to skip
+        int snapN = 0;                  // Products the snapshot holds
+        if (Files.exists(snap)) {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(snap));
+            int magic = buf.getInt();
+            if (magic != MAGIC)
+                throw new IOException("Not a snapshot file: " + snap);
+            gen = buf.getLong();
+            day = buf.getInt();
+            ttlCents = buf.getLong();
+            DayLedger led = new DayLedger(day);
+            led.setCents(buf.getLong());
+            snapN = buf.getInt();
+            for (int k = 0; k < STRIPES; k++)
+                pos[k] = buf.getLong();
+            int s = Math.min(snapN, ProdList.getListSize());
+            for (int i = 0; i < s; i++) {
+                ProdList.store.setAmtOnShelf(i, buf.getInt());
+                int sold = buf.getInt();
+                ProdList.store.setNumSoldTot(i, buf.getInt());
+                ProdList.store.setRevTot(i, buf.getLong());
+                led.setSold(i, sold, buf.getLong());
+            }
+            ProdList.today = led;
+        }
+        // A crash after the last snapshot but before its old journals were
+        // deleted leaves them behind, they are already in the snapshot
+        for (long g = gen - 1; g >= 0 && Files.exists(journalPath(g)); g--)
+            Files.delete(journalPath(g));
+        snapGen = gen;
+        // A crash after a new journal was started but before its snapshot was
+        // written leaves more than one journal after the snapshot. Each was
+        // forced before the next was written to, so they are replayed in turn.
+        long whole;
+        long skip[] = pos; // Only the snapshot's own journal has records it holds
+        while (true) {
+            chan = FileChannel.open(journalPath(gen), StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = chan.size();
+            whole = size - size % REC_SIZE; // Drop a record cut off by a crash
+            if (whole > 0) {
+                // Map the journal instead of reading it, so replay is one pass
+                // over memory with no copying
+                MappedByteBuffer map = chan.map(FileChannel.MapMode.READ_ONLY, 0, whole);
+                for (long r = 0; map.hasRemaining(); r++) {
+                    int type = map.getInt(), a = map.getInt();
+                    long b = map.getLong();
+                    // A product's records its stripe's copy already holds
+                    if (skip != null && type != DAY_SWITCH && a < snapN
+                        && r < skip[a & (STRIPES - 1)])
+                        continue;
+                    replay(type, a, b);
+                }
+            }
+            if (!Files.exists(journalPath(gen + 1)))
+                break;
+            chan.close();
+            gen++;
+            skip = null;
+        }
+        finishedGen = gen - 1;
+        genBase = -(whole / REC_SIZE); // New records follow the ones on disk
+        // Sales counted in a day whose switch record never made it to disk
+        // stay in the day the journal ended on
+        for (int e[] : early)
+            ProdList.today.sell(e[0], e[1], e[2]);
+        early.clear();
+        chan.truncate(whole);
+        chan.position(whole);
+        // Amounts changed without the low stock index seeing them, each
+        // stripe fills in again when next used
+        ProdList.lowStock.clear();
+    }
+    // Apply one record to the values in ProdList
+    private void replay(int type, int a, long b) throws IOException {
+        if ((type & 0xff) == PURCHASE) {
+            int c = (int) (b >>> 32);
+            int tag = type >>> 8;
+            ProdList.store.sell(a, c, (int) b);
+            if (tag == 0 || tag == day) // Counted in the current day
+                ProdList.today.sell(a, c, (int) b);
+            else if (tag > day) // Counted in the day the next record starts
+                early.add(new int[] { a, c, (int) b });
+            // A sale from an earlier day is already in the total money
+        } else if (type == DAY_SWITCH) {
+            ProdList.endDay(ProdList.today);
+            ProdList.today = new DayLedger(a);
+            day = a;
+            ttlCents = b;
+            for (int e[] : early)
+                ProdList.today.sell(e[0], e[1], e[2]);
+            early.clear();
+        } else if (type == RESTOCK) {
+            ProdList.store.receive(a, (int) b);
+        } else {
+            throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // Write a final snapshot, then everything still buffered, and stop the flusher.
+    // Callbacks still waiting for a force are run.
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+        }
+        Snapshot();
+        java.util.List<Runnable> ready = java.util.Collections.emptyList();
+        try {
+            synchronized (this) {
+                if (closed)
+                    return;
+                closed = true;
+                writeLock.lock();
+                try {
+                    finishedGen = Math.max(finishedGen, finishRetired(retired));
+                    writeBuffer(chan, cur);
+                    chan.force(false);
+                    chan.close();
+                    forced = appended;
+                } finally {
+                    writeLock.unlock();
+                    ready = released(); // Every callback, even if this failed
+                    notifyAll();
+                }
+            }
+        } finally {
+            run(ready);
+            flusher.interrupt();
+        }
+    }
+}
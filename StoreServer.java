@@ -0,0 +1,370 @@
+/*************************************************************************************
+ * StoreServer
+ * -----------------------------------------------------------------------------------
+ * Runs a store without any window and lets registers reach it over a local TCP
+ * connection, so many register lanes, in this program or others, share one catalog.
+ * One thread accepts connections and reads and writes every one of them without
+ * blocking. Requests are spread over worker threads by product: a product always
+ * goes to the same worker, picked from the stripe of its product lock, so two
+ * workers never wait on the same lock and each worker keeps to its own part of
+ * the catalog. Names are looked up on a worker picked from the name, never on the
+ * thread reading the connections, as the first lookup indexes the whole catalog.
+ * A purchase then moves on to its product's worker. A connection has one request
+ * running at a time and gets its replies in the order it sent the requests. Each
+ * store runs its own server with its own data directory and port.
+ * -----------------------------------------------------------------------------------
+ * PROTOCOL (one UTF-8 line per request and per reply)
+ *  PURCHASE <amount> <name> : OK <money earned today in cents> <purchase message>
+ *  LOOKUP <name>            : OK <index> <price in cents> <amount on shelf> <name>,
+ *                             or OK -1 when there is no such product
+ *  SUMMARY                  : OK <day> <money earned today in cents>
+ *                             <total money in cents> <number of products>
+ *  NEXTDAY                  : OK <new day> <total money in cents>
+ *  Anything else, or a request which fails, gets ERR and the reason.
+ * -----------------------------------------------------------------------------------
+ * ARGUMENTS (all optional, in order)
+ *  port           : Port to listen on, on the loopback address (7018)
+ *  workers        : Number of worker threads (the number of processors)
+ *  data directory : Where sales are saved, "-" for nowhere (-)
+ *  catalog file   : A catalog to load, as for PetSupplyManager
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                         // For IOException
+import java.net.*;                        // For the addresses
+import java.nio.*;                        // For ByteBuffer
+import java.nio.channels.*;               // For the selector and socket channels
+import java.nio.charset.StandardCharsets; // For reading and writing lines
+import java.util.*;                       // For ArrayDeque
+import java.util.concurrent.*;            // For the workers
+import java.util.concurrent.atomic.*;     // For the wakeup flag
+
+class StoreServer implements Closeable {
+    static final int DEFAULT_PORT = 7018;
+    static final int MAX_LINE = 8192;     // Longest request line in bytes
+    // Stands for a line which was too long, no real line holds a newline
+    private static final String TOO_LONG = "\n";
+
+    private final Register reg;           // Runs the purchases and lookups
+    private final SupplySummary sum;      // Runs the day switches
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ExecutorService shards[]; // One thread each
+    // Connections with a reply ready, handed back by the workers
+    private final ConcurrentLinkedQueue<Conn> replied = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean woken = new AtomicBoolean(); // Wakeup is pending
+    private final Thread loop;            // Reads and writes the connections
+    private volatile boolean closed;
+
+    // One client connection
+    private static final class Conn {
+        final SocketChannel ch;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE); // Bytes not yet a line
+        ByteBuffer out;                   // Reply still being written, or null
+        final ArrayDeque<String> lines = new ArrayDeque<>(); // Requests waiting
+        boolean busy;                     // A request is running
+        String reply;                     // Set by a worker when it finishes
+        String inline;                    // Set when the server thread answered
+        boolean closing;                  // Close after the replies are written
+        Conn(SocketChannel c) { ch = c; }
+    }
+
+    // Start a server on the given loopback port, 0 for any free port, with the
+    // given number of workers. The register and summary are the store's.
+    StoreServer(int port, int workers, Register r, SupplySummary s) throws IOException {
+        reg = r;
+        sum = s;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        shards = new ExecutorService[workers];
+        for (int w = 0; w < workers; w++) {
+            String name = "Store worker " + w;
+            shards[w] = Executors.newSingleThreadExecutor(task -> {
+                Thread t = new Thread(task, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        loop = new Thread(this::run, "Store server");
+        loop.start();
+    }
+    // Retrieve the port the server listens on
+    public int getPort() { return server.socket().getLocalPort(); }
+
+    // Pick the worker for a product. Products sharing a lock share a worker.
+    private ExecutorService shardFor(int indx) {
+        return shards[(indx & (ProdList.STRIPES - 1)) % shards.length];
+    }
+    // Pick the worker to look up a name. The same name always goes to the same
+    // worker, so lookups spread over the workers.
+    private ExecutorService shardFor(String n) {
+        return shards[Math.floorMod(n.hashCode(), shards.length)];
+    }
+
+    // Accept, read and write until closed
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                woken.set(false);
+                for (Conn c; (c = replied.poll()) != null; ) { // Finished replies
+                    String r = c.reply;
+                    c.reply = null;
+                    if (send(c, r))
+                        next(c);
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid())
+                        continue;
+                    if (k.isAcceptable())
+                        accept();
+                    else
+                        ready(k);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed)
+                System.err.println("Store server stopped: " + e);
+        }
+    }
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null)
+            return;
+        ch.configureBlocking(false);
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ch.register(selector, SelectionKey.OP_READ, new Conn(ch));
+    }
+    // A connection can be read or written
+    private void ready(SelectionKey k) {
+        Conn c = (Conn) k.attachment();
+        try {
+            if (k.isWritable()) {
+                if (!flush(c))
+                    return;
+                next(c);
+            }
+            if (k.isReadable())
+                read(c);
+        } catch (IOException e) {
+            drop(c);
+        }
+    }
+    // Read what has arrived and split it into lines
+    private void read(Conn c) throws IOException {
+        if (c.ch.read(c.in) < 0) { // The client is done sending
+            c.closing = true;
+            c.ch.keyFor(selector).interestOps(0);
+            next(c); // Answer what it sent, then close
+            return;
+        }
+        ByteBuffer b = c.in;
+        int start = 0;
+        for (int i = 0; i < b.position(); i++) {
+            if (b.get(i) == '\n') {
+                int end = i > start && b.get(i - 1) == '\r' ? i - 1 : i;
+                c.lines.add(new String(b.array(), start, end - start,
+                                       StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start == 0 && !b.hasRemaining()) { // No room left for a whole line
+            c.lines.add(TOO_LONG);
+            b.clear();
+        } else { // Keep the part of a line still coming
+            b.limit(b.position()).position(start);
+            b.compact();
+        }
+        next(c);
+    }
+    // Start the waiting requests of a connection, one at a time. Requests
+    // answered on this thread are written right away, the loop stops at one
+    // which went to a worker or a reply the socket has no room for.
+    private void next(Conn c) {
+        while (!c.busy && c.out == null && !c.lines.isEmpty() && c.ch.isOpen()) {
+            c.busy = true;
+            String ln = c.lines.poll();
+            if (ln == TOO_LONG) {
+                c.closing = true;
+                c.lines.clear();
+                reply(c, "ERR Line too long");
+            } else {
+                dispatch(c, ln);
+            }
+            if (c.inline != null) {
+                String r = c.inline;
+                c.inline = null;
+                send(c, r);
+            }
+        }
+        if (!c.busy && c.out == null && c.closing)
+            drop(c);
+    }
+    // Run a request, on the worker which owns its product. Replies from a
+    // worker come back through reply.
+    private void dispatch(Conn c, String ln) {
+        int sp = ln.indexOf(' ');
+        String cmd = sp < 0 ? ln : ln.substring(0, sp);
+        String rest = sp < 0 ? "" : ln.substring(sp + 1);
+        try {
+            switch (cmd) {
+                case "PURCHASE": {
+                    int sp2 = rest.indexOf(' ');
+                    int amt = Integer.parseInt(sp2 < 0 ? rest : rest.substring(0, sp2));
+                    if (amt <= 0 || sp2 < 0)
+                        throw new NumberFormatException();
+                    String name = rest.substring(sp2 + 1);
+                    ExecutorService w = shardFor(name);
+                    w.execute(guard(c, () -> {
+                        int indx = reg.Lookup(name);
+                        // The product's worker sells and goes on to the next
+                        // request, the reply is sent once the sale is on disk
+                        Runnable sell = () ->
+                            reg.Purchase(indx, amt, msg -> reply(c, msg == null
+                                    ? "ERR Sales journal write failed"
+                                    : "OK " + Register.getDlyCents() + " " + msg));
+                        ExecutorService own = shardFor(Math.max(indx, 0));
+                        if (own == w)
+                            sell.run();
+                        else
+                            own.execute(guard(c, sell));
+                    }));
+                    break;
+                }
+                case "LOOKUP": // The values are read without a lock
+                    shardFor(rest).execute(guard(c, () -> {
+                        int indx = reg.Lookup(rest);
+                        reply(c, indx < 0 ? "OK -1" : "OK " + indx + " " +
+                              ProdList.getPriceCents(indx) + " " +
+                              ProdList.getAmtOnShelf(indx) + " " +
+                              ProdList.getName(indx));
+                    }));
+                    break;
+                case "SUMMARY": // Day values are kept by worker 0
+                    shards[0].execute(guard(c, () -> reply(c, "OK " + sum.getDay() + " " +
+                            Register.getDlyCents() + " " + sum.getTtlCents() + " " +
+                            ProdList.getListSize())));
+                    break;
+                case "NEXTDAY":
+                    shards[0].execute(guard(c, () -> {
+                        sum.SwitchDay();
+                        reply(c, "OK " + sum.getDay() + " " + sum.getTtlCents());
+                    }));
+                    break;
+                default:
+                    reply(c, "ERR Unknown request");
+            }
+        } catch (NumberFormatException e) {
+            reply(c, "ERR Bad amount");
+        } catch (RejectedExecutionException e) { // Closing
+            reply(c, "ERR Server closing");
+        }
+    }
+    // Wrap a request run on a worker so one which throws still gets a reply.
+    // Otherwise the connection would wait on it forever, and the worker
+    // thread would die with the exception.
+    private Runnable guard(Conn c, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                String why = e.getMessage() != null ? e.getMessage()
+                                                    : e.getClass().getSimpleName();
+                reply(c, "ERR " + why.replace('\n', ' ').replace('\r', ' '));
+            }
+        };
+    }
+    // Hand a finished reply back to the server thread
+    private void reply(Conn c, String r) {
+        if (Thread.currentThread() == loop) {
+            c.inline = r;
+            return;
+        }
+        c.reply = r;
+        replied.add(c);
+        if (woken.compareAndSet(false, true)) // One wakeup for many replies
+            selector.wakeup();
+    }
+    // Start writing a finished reply. Returns true if it was all written.
+    private boolean send(Conn c, String r) {
+        c.busy = false;
+        if (!c.ch.isOpen()) // Dropped while the request ran
+            return false;
+        c.out = ByteBuffer.wrap((r + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            return flush(c);
+        } catch (IOException e) {
+            drop(c);
+            return false;
+        }
+    }
+    // Write as much of the reply as the socket takes. Returns true once it is
+    // all written, otherwise waits for the socket to have room.
+    private boolean flush(Conn c) throws IOException {
+        c.ch.write(c.out);
+        SelectionKey k = c.ch.keyFor(selector);
+        if (c.out.hasRemaining()) {
+            k.interestOps(SelectionKey.OP_WRITE);
+            return false;
+        }
+        c.out = null;
+        k.interestOps(c.closing ? 0 : SelectionKey.OP_READ);
+        return true;
+    }
+    private void drop(Conn c) {
+        try {
+            c.ch.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    // Stop accepting and close every connection, letting the workers finish
+    // what they were running
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ExecutorService w : shards)
+            w.shutdown();
+        for (SelectionKey k : selector.keys())
+            k.channel().close();
+        selector.close();
+    }
+
+    public static void main(String args[]) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int workers = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        SalesJournal j = ProdList.open(args.length > 2 ? args[2] : null,
+                                       args.length > 3 ? args[3] : null);
+        Register reg = j == null ? new Register(0L) : new Register(j.getDlyCents());
+        SupplySummary sum = j == null ? new SupplySummary(10, 0L, 1)
+                                      : new SupplySummary(10, j.getTtlCents(), j.getDay());
+        StoreServer s = new StoreServer(port, workers, reg, sum);
+        SalesJournal jj = j;
+        // Stop taking requests, then save everything still buffered
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                s.close();
+                if (jj != null)
+                    jj.close();
+            } catch (IOException e) {
+                System.err.println("Closing store server failed: " + e);
+            }
+        }));
+        System.out.println("Store server on port " + s.getPort() + " with " + workers
+                           + " workers, " + ProdList.getListSize() + " products");
+    }
+}
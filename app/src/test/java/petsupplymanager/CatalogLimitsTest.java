@@ -0,0 +1,61 @@
+/*************************************************************************************
+ * CatalogLimitsTest
+ * -----------------------------------------------------------------------------------
+ * Checks the edges of a catalog: a saved catalog with no products can be mapped
+ * and then added to, and a price too high for a sale to ring up is turned away
+ * whether it comes from a CSV file or is set in the program.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;                         // For IOException
+import java.nio.charset.StandardCharsets; // For writing the CSV file
+import java.nio.file.*;                   // For the temporary files
+import java.time.Duration;                // For the time limit
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CatalogLimitsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void emptyMappedCatalogGrows() throws IOException {
+        Path p = dir.resolve("empty.psc");
+        new ProdStore(false).save(p);
+        ProdStore s = new ProdStore(false);
+        assertEquals(0, s.map(p));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            assertEquals(0, s.add("Limits Test Bowl", 499, 3));
+            assertEquals(1, s.add("Limits Test Brush", 799, 2));
+        });
+        assertEquals("Limits Test Brush", s.getName(1));
+        assertEquals(499, s.getPriceCents(0));
+    }
+
+    @Test
+    void pricesAboveAnIntOfCentsAreRejected() throws IOException {
+        Path p = dir.resolve("dear.csv");
+        // $21,474,836.48 is one cent more than the largest int of cents
+        Files.write(p, "name,price,amount\nLimits Test Yacht,21474836.48,1\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        int size = ProdList.getListSize();
+        IOException e = assertThrows(IOException.class, () -> CatalogIO.upsert(p));
+        assertTrue(e.getMessage().contains("bad price"), e.getMessage());
+        assertEquals(size, ProdList.getListSize(), "product added");
+
+        long max = ProdStore.MAX_PRICE_CENTS, before = ProdList.getPriceCents(0);
+        assertThrows(IllegalArgumentException.class,
+                     () -> ProdList.addProd("Limits Test Yacht", max + 1, 1));
+        assertThrows(IllegalArgumentException.class,
+                     () -> ProdList.setProd(0, max + 1, 1));
+        assertThrows(IllegalArgumentException.class,
+                     () -> ProdList.setProd(0, -1, 1));
+        assertEquals(before, ProdList.getPriceCents(0), "price changed");
+
+        int i = ProdList.addProd("Limits Test Boat", max, 1); // The highest is fine
+        assertSame(PurchStatus.SUCCESS.getMsg(), new Register(0L).Purchase(i, 1));
+        assertEquals(max, ProdList.getRevenue(i));
+        assertEquals(max, Register.getDlyCents());
+    }
+}
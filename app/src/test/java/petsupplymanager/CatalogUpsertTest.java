@@ -0,0 +1,55 @@
+/*************************************************************************************
+ * CatalogUpsertTest
+ * -----------------------------------------------------------------------------------
+ * Applies a CSV catalog as an update and checks that a product already in the list
+ * gets the file's values, that the new products are added together in the order of
+ * the file with the listeners told once, and that a new name given twice is added
+ * once with the values of its last line.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets; // For writing the CSV file
+import java.nio.file.*;                   // For the catalog file
+import java.util.*;                       // For the calls seen
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CatalogUpsertTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void newProductsAreAddedTogether() throws Exception {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        ProdList.addListener(new ProdListener() {
+            @Override
+            public void prodChanged(int indx) { calls.add("changed " + indx); }
+            @Override
+            public void prodsAdded(int first, int end) {
+                calls.add("added " + first + " " + end);
+            }
+        });
+        int size = ProdList.getListSize();
+        String old = ProdList.getName(0).replace("\"", "\"\"");
+        Path p = dir.resolve("update.csv");
+        Files.write(p, ("name,price,amount\n" +
+                        "\"" + old + "\",1.25,40\n" +
+                        "Upsert Test Leash,9.99,3\n" +
+                        "Upsert Test Collar,4.50,7\n" +
+                        "Upsert Test Leash,8.99,5\n" +
+                        "Upsert Test Crate,59.00,1\n").getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(new int[] { 2, 3 }, CatalogIO.upsert(p));
+        assertEquals(125, ProdList.getPriceCents(0));
+        assertEquals(40, ProdList.getAmtOnShelf(0));
+        assertEquals(size + 3, ProdList.getListSize());
+        assertEquals("Upsert Test Leash", ProdList.getName(size));
+        assertEquals(899, ProdList.getPriceCents(size), "last line wins");
+        assertEquals(5, ProdList.getAmtOnShelf(size));
+        assertEquals("Upsert Test Collar", ProdList.getName(size + 1));
+        assertEquals("Upsert Test Crate", ProdList.getName(size + 2));
+        assertEquals(List.of("changed 0", "added " + size + " " + (size + 3)), calls);
+        assertEquals(size + 2, new Register(0L).Lookup("Upsert Test Crate"));
+    }
+}
@@ -0,0 +1,66 @@
+/*************************************************************************************
+ * InvalidAmountTest
+ * -----------------------------------------------------------------------------------
+ * Checks that buying zero or less of a product is turned away instead of putting
+ * stock back on the shelf and taking money out of the day, whether bought by
+ * name, by index, in a basket or from a replayed transaction file, that a bad
+ * line in a replayed file fails only its own transaction, and that a basket
+ * whose lines add up past the largest int is still too much.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;                      // For the replayed file
+import org.junit.jupiter.api.Test;
+
+class InvalidAmountTest {
+    static final String INVALID = PurchStatus.INVALID_AMOUNT.getMsg();
+
+    @Test
+    void nonPositiveAmountsAreRejected() throws IOException {
+        Register reg = new Register(0L);
+        String name = ProdList.getName(0);
+        int amt = ProdList.getAmtOnShelf(0);
+        long counted = ProdList.metrics.getInvalidAmounts();
+
+        assertEquals(INVALID, reg.Purchase(name, -5));
+        assertEquals(INVALID, reg.Purchase(name, 0));
+        assertEquals(INVALID, reg.Purchase(0, -5));
+
+        Basket b = new Basket();
+        b.add(ProdList.getName(1), 1);
+        b.add(name, -100);
+        PurchStatus res[] = reg.Purchase(b);
+        assertEquals(PurchStatus.NOT_APPLIED, res[0]);
+        assertEquals(PurchStatus.INVALID_AMOUNT, res[1]);
+        assertEquals(counted + 4, ProdList.metrics.getInvalidAmounts());
+        assertTrue(ProdList.metrics.getReport().contains("invalid amount " + (counted + 4)));
+
+        // A bad line fails its own transaction and the replay goes on
+        BufferedReader in = new BufferedReader(new StringReader(
+                name + "\t-100\n\n" + name + "\tmany\n\n" + name + "\n"));
+        assertArrayEquals(new int[] { 0, 3 }, BasketReplay.Replay(reg, in));
+        assertEquals(counted + 7, ProdList.metrics.getInvalidAmounts());
+
+        assertEquals(amt, ProdList.getAmtOnShelf(0), "shelf changed");
+        assertEquals(0, Register.getDlyCents(), "daily money changed");
+
+        // The transactions around a bad one are still sold
+        BufferedReader mixed = new BufferedReader(new StringReader(
+                name + "\t1\n\n" + name + "\t-1\n\n" + name + "\t1\n"));
+        assertArrayEquals(new int[] { 2, 1 }, BasketReplay.Replay(reg, mixed));
+        assertEquals(amt - 2, ProdList.getAmtOnShelf(0));
+    }
+
+    @Test
+    void basketTotalsDoNotWrap() {
+        Register reg = new Register(0L);
+        Basket b = new Basket();
+        b.add(ProdList.getName(0), Integer.MAX_VALUE);
+        b.add(ProdList.getName(0), Integer.MAX_VALUE);
+        b.add(ProdList.getName(0), 3); // The int sum would wrap to 1
+        PurchStatus res[] = reg.Purchase(b);
+        assertEquals(PurchStatus.AMOUNT_TOO_HIGH, res[0]);
+        assertEquals(0, Register.getDlyCents());
+    }
+}
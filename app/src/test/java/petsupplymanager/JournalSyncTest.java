@@ -0,0 +1,117 @@
+/*************************************************************************************
+ * JournalSyncTest
+ * -----------------------------------------------------------------------------------
+ * Checks that a purchase saved to the sales journal is only reported once its
+ * record has been written out, whether the register waits for it or the store
+ * server is called back, and that many registers waiting at once all get through.
+ * An async journal, which fills its buffer faster than it is written, must keep
+ * going too.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;                      // For IOException
+import java.nio.file.*;                // For the data folder
+import java.util.concurrent.*;         // For the thread pool
+import org.junit.jupiter.api.*;
+
+class JournalSyncTest {
+    static final int THREADS = 16;
+    static final int EACH = 500;       // Purchases per thread
+    private Path dir;
+
+    @BeforeEach
+    void open() throws IOException {
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        sum.Restock(0, 1_000_000);
+        dir = Files.createTempDirectory("petsupply-sync");
+        ProdList.journal = new SalesJournal(dir);
+    }
+    @AfterEach
+    void close() throws IOException {
+        ProdList.journal.close();
+        ProdList.journal = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files)
+                Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+    // Size of the open journal file, the only one in the folder
+    private long journalSize() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "sales.*.journal")) {
+            long s = 0;
+            for (Path f : files)
+                s += Files.size(f);
+            return s;
+        }
+    }
+
+    @Test
+    void purchaseReturnsAfterItsRecordIsWritten() throws Exception {
+        Register reg = new Register(0L);
+        String name = ProdList.getName(0);
+        long base = ProdList.getNumSoldTot(0); // Sold before this journal
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        java.util.List<Future<?>> runs = new java.util.ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            runs.add(pool.submit(() -> {
+                for (int k = 0; k < EACH; k++) {
+                    long before = ProdList.getNumSoldTot(0) - base;
+                    assertEquals(PurchStatus.SUCCESS.getMsg(), reg.Purchase(name, 1));
+                    // At least every sale counted before this one is in the file
+                    assertTrue(journalSize() >= (before + 1) * SalesJournal.REC_SIZE);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : runs)
+            f.get(1, TimeUnit.MINUTES);
+        pool.shutdown();
+        assertEquals(THREADS * EACH * (long) SalesJournal.REC_SIZE, journalSize());
+    }
+
+    @Test
+    void callbackRunsAfterItsRecordIsWritten() throws Exception {
+        Register reg = new Register(0L);
+        CompletableFuture<Long> size = new CompletableFuture<>();
+        reg.Purchase(0, 2, msg -> {
+            assertEquals(PurchStatus.SUCCESS.getMsg(), msg);
+            try {
+                size.complete(journalSize());
+            } catch (IOException e) {
+                size.completeExceptionally(e);
+            }
+        });
+        assertEquals(SalesJournal.REC_SIZE, (long) size.get(1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    void asyncJournalWritesFullBuffers() throws Exception {
+        ProdList.journal.close();
+        System.setProperty("petsupply.journal.async", "true");
+        try {
+            ProdList.journal = new SalesJournal(dir);
+        } finally {
+            System.clearProperty("petsupply.journal.async");
+        }
+        long sold = ProdList.getNumSoldTot(0) + THREADS * EACH * 20L;
+        Register reg = new Register(0L);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        java.util.List<Future<?>> runs = new java.util.ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            runs.add(pool.submit(() -> {
+                for (int k = 0; k < EACH * 20; k++) // Many buffers full
+                    reg.Purchase(0, 1);
+            }));
+        }
+        for (Future<?> f : runs)
+            f.get(1, TimeUnit.MINUTES);
+        pool.shutdown();
+        ProdList.journal.sync(); // Returns at once, nothing waits when async
+        ProdList.journal.close();
+        ProdList.store.setNumSoldTot(0, 0);
+        ProdList.journal = new SalesJournal(dir); // Loads what close saved
+        assertEquals(sold, ProdList.getNumSoldTot(0));
+    }
+}
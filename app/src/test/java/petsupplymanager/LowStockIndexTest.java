@@ -0,0 +1,83 @@
+/*************************************************************************************
+ * LowStockIndexTest
+ * -----------------------------------------------------------------------------------
+ * Sells down a catalog from many registers at once, so products move through the
+ * buckets of every stripe together, then checks that a query returns exactly the
+ * products at or below the threshold, lowest amount first. Also loads a catalog,
+ * which the index only sees as its stripes are used, and checks the same.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets; // For writing the CSV file
+import java.nio.file.*;                // For the catalog file
+import java.util.*;                    // For Random
+import java.util.concurrent.*;         // For the thread pool
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LowStockIndexTest {
+    static final int PRODUCTS = 5000;
+    static final int THREADS = 32;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void queryMatchesTheShelves() throws Exception {
+        for (int i = ProdList.getListSize(); i < PRODUCTS; i++)
+            ProdList.addProd("Low Stock Test Product " + i, 500, 100);
+        Register reg = new Register(0L);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            runs.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                for (int k = 0; k < 20_000; k++)
+                    reg.Purchase(r.nextInt(PRODUCTS), 1 + r.nextInt(4));
+            }));
+        }
+        for (Future<?> f : runs)
+            f.get(1, TimeUnit.MINUTES);
+        pool.shutdown();
+
+        checkQueries(PRODUCTS);
+    }
+
+    @Test
+    void loadedCatalogIsIndexedWhenUsed() throws Exception {
+        StringBuilder sb = new StringBuilder("name,price,amount\n");
+        for (int i = 0; i < PRODUCTS; i++)
+            sb.append("Loaded Product ").append(i).append(",1.50,").append(i % 100)
+              .append('\n');
+        Path p = dir.resolve("catalog.csv");
+        Files.write(p, sb.toString().getBytes(StandardCharsets.UTF_8));
+        assertEquals(PRODUCTS, CatalogIO.load(p));
+        Register reg = new Register(0L);
+        for (int i = 0; i < PRODUCTS; i += 7) // Some stripes are used first
+            reg.Purchase(i, 1);
+        checkQueries(PRODUCTS);
+    }
+
+    // Check queries at several thresholds against the amounts on shelf
+    private static void checkQueries(int products) {
+        for (int t : new int[] { 0, 10, 40, LowStockIndex.MAX_AMT, 1000 }) {
+            int q[] = ProdList.lowStock.query(t);
+            Set<Integer> seen = new HashSet<>();
+            int last = 0;
+            for (int i : q) {
+                int amt = ProdList.getAmtOnShelf(i);
+                assertTrue(amt <= t, "product " + i + " above threshold " + t);
+                assertTrue(amt >= last, "not lowest first");
+                assertTrue(seen.add(i), "product " + i + " twice");
+                last = amt;
+            }
+            int want = 0;
+            for (int i = 0; i < products; i++)
+                if (ProdList.getAmtOnShelf(i) <= Math.min(t, LowStockIndex.MAX_AMT))
+                    want++;
+            assertEquals(want, q.length, "threshold " + t);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*************************************************************************************
+ * MoneyDriftTest
+ * -----------------------------------------------------------------------------------
+ * Rings up 10 million purchases at prices no float can hold exactly, $19.99 and
+ * $0.37, switching day every million, and checks that the daily, total and
+ * per-product money come out to the exact cent. The same sums in float dollars,
+ * as the program used to keep them, are shown to drift.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class MoneyDriftTest {
+    static final int SALES = 10_000_000;  // Purchases in all, half of each product
+    static final int DAY = 1_000_000;     // Purchases per day
+
+    @Test
+    void tenMillionSalesDoNotDrift() {
+        int a = ProdList.addProd("Drift Test Chew Toy", Money.toCents(19.99), 0);
+        int b = ProdList.addProd("Drift Test Treat", Money.toCents(0.37), 0);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        assertEquals("Restock Successful", sum.Restock(a, SALES / 2));
+        assertEquals("Restock Successful", sum.Restock(b, SALES / 2));
+        Register reg = new Register(0L);
+        String ok = PurchStatus.SUCCESS.getMsg();
+        float dlyFloat = 0, ttlFloat = 0; // What float dollars would have said
+
+        for (int k = 0; k < SALES; k++) {
+            int i = (k & 1) == 0 ? a : b;
+            assertSame(ok, reg.Purchase(i, 1));
+            dlyFloat += 1 * ProdList.getPrice(i);
+            if ((k + 1) % DAY == 0) { // End of a day
+                sum.SwitchDay();
+                ttlFloat += dlyFloat;
+                dlyFloat = 0;
+            }
+        }
+
+        long want = (SALES / 2) * 1999L + (SALES / 2) * 37L; // $101,800,000.00
+        assertEquals(10_180_000_000L, want);
+        assertEquals(want, sum.getTtlCents());
+        assertEquals(0, Register.getDlyCents());
+        assertEquals("101800000.00", Money.format(sum.getTtlCents()));
+        assertEquals((SALES / 2) * 1999L, ProdList.getRevenue(a));
+        assertEquals((SALES / 2) * 37L, ProdList.getRevenue(b));
+        assertEquals("99950000.00", Money.format(ProdList.getRevenue(a)));
+        assertEquals("1850000.00", Money.format(ProdList.getRevenue(b)));
+        assertEquals(SALES / 2, ProdList.getNumSoldTot(a));
+        assertEquals(0, ProdList.getAmtOnShelf(a) + ProdList.getAmtOnShelf(b));
+        // Float dollars are off by far more than a cent over the same sales
+        assertTrue(Math.abs(Money.toCents(ttlFloat) - want) > 100);
+    }
+}
@@ -0,0 +1,45 @@
+/*************************************************************************************
+ * NameEqualsTest
+ * -----------------------------------------------------------------------------------
+ * Checks that comparing a name with the stored bytes agrees with comparing the
+ * decoded String, on and off the heap, and that Register.LinearSearch finds the
+ * same products through it.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets; // For encoding names
+import org.junit.jupiter.api.Test;
+
+class NameEqualsTest {
+    static final String NAMES[] = { "Kibble", "Kibbles", "kibble", "", "Café Crunch",
+                                    "Catnip 2 oz", "Catnip 3 oz" };
+
+    // Check every name against every other in a store
+    private static void check(ProdStore s) {
+        for (String n : NAMES)
+            s.add(n, 100, 1);
+        for (int i = 0; i < NAMES.length; i++) {
+            for (String n : NAMES) {
+                byte b[] = n.getBytes(StandardCharsets.UTF_8);
+                assertEquals(NAMES[i].equals(n), s.nameEquals(i, b), NAMES[i] + " / " + n);
+            }
+            assertEquals(NAMES[i], s.getName(i));
+        }
+    }
+
+    @Test
+    void heapNames() { check(new ProdStore(false)); }
+
+    @Test
+    void offHeapNames() { check(new ProdStore(true)); }
+
+    @Test
+    void linearSearchFindsEveryProduct() {
+        Register reg = new Register(0L);
+        for (int i = 0; i < ProdList.getListSize(); i++)
+            assertEquals(i, reg.LinearSearch(ProdList.getName(i)));
+        assertEquals(-1, reg.LinearSearch("No Such Product"));
+        assertEquals(-1, reg.LinearSearch(ProdList.getName(0).toUpperCase()));
+    }
+}
@@ -0,0 +1,63 @@
+/*************************************************************************************
+ * ProdTableModelTest
+ * -----------------------------------------------------------------------------------
+ * Sells from many registers at once with the product table model listening, then
+ * checks that a flush tells the table about every row which sold, from whichever
+ * stripe's dirty set it was marked in, and that the next flush has nothing left.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;                    // For the sold rows
+import java.util.concurrent.*;         // For the thread pool
+import javax.swing.SwingUtilities;     // For flushing on the event thread
+import org.junit.jupiter.api.Test;
+
+class ProdTableModelTest {
+    static final int PRODUCTS = 3000;
+    static final int THREADS = 16;
+
+    static {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    void flushReportsEverySoldRow() throws Exception {
+        for (int i = ProdList.getListSize(); i < PRODUCTS; i++)
+            ProdList.addProd("Table Test Product " + i, 250, 1000);
+        ProdTableModel mdl = new ProdTableModel();
+        ProdList.addListener(mdl);
+        Set<Integer> updated = ConcurrentHashMap.newKeySet();
+        mdl.addTableModelListener(e -> {
+            for (int r = e.getFirstRow(); r <= e.getLastRow(); r++)
+                updated.add(r);
+        });
+
+        Register reg = new Register(0L);
+        Set<Integer> sold = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            runs.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                for (int k = 0; k < 100; k++) {
+                    int i = r.nextInt(PRODUCTS / 8);
+                    if (reg.Purchase(i, 1).equals(PurchStatus.SUCCESS.getMsg()))
+                        sold.add(i);
+                }
+            }));
+        }
+        for (Future<?> f : runs)
+            f.get(1, TimeUnit.MINUTES);
+        pool.shutdown();
+
+        SwingUtilities.invokeAndWait(mdl::flush); // After any flush already queued
+        assertFalse(sold.isEmpty());
+        assertTrue(updated.containsAll(sold), "a sold row was not reported");
+
+        updated.clear();
+        SwingUtilities.invokeAndWait(mdl::flush);
+        assertTrue(updated.isEmpty(), "rows reported twice");
+    }
+}
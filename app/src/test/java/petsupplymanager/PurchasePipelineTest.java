@@ -0,0 +1,50 @@
+/*************************************************************************************
+ * PurchasePipelineTest
+ * -----------------------------------------------------------------------------------
+ * Checks that a purchase or basket which throws on a worker is still answered,
+ * with REGISTER_ERROR, and that the pipeline goes on to run the next purchase.
+ * The register is made to throw by giving it a sales journal which is closed.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.*;                // For the data folder
+import java.util.concurrent.*;         // For waiting on the answers
+import org.junit.jupiter.api.Test;
+
+class PurchasePipelineTest {
+    @Test
+    void failedPurchasesAreStillAnswered() throws Exception {
+        Register reg = new Register(0L);
+        PurchasePipeline pipe = new PurchasePipeline(reg, 1, 16);
+        Path dir = Files.createTempDirectory("petsupply-pipeline");
+        SalesJournal j = new SalesJournal(dir);
+        j.close();
+        ProdList.journal = j; // Every sale now throws IllegalStateException
+        try {
+            CompletableFuture<String> msg = new CompletableFuture<>();
+            assertTrue(pipe.submit(ProdList.getName(0), 1, msg::complete));
+            assertEquals(PurchStatus.REGISTER_ERROR.getMsg(), msg.get(10, TimeUnit.SECONDS));
+
+            Basket b = new Basket();
+            b.add(ProdList.getName(0), 1);
+            b.add(ProdList.getName(1), 1);
+            CompletableFuture<PurchStatus[]> res = new CompletableFuture<>();
+            assertTrue(pipe.submit(b, res::complete));
+            assertArrayEquals(new PurchStatus[] { PurchStatus.REGISTER_ERROR,
+                                                  PurchStatus.REGISTER_ERROR },
+                              res.get(10, TimeUnit.SECONDS));
+        } finally {
+            ProdList.journal = null;
+        }
+        CompletableFuture<String> msg = new CompletableFuture<>();
+        assertTrue(pipe.submit(ProdList.getName(0), 1, msg::complete));
+        assertEquals(PurchStatus.SUCCESS.getMsg(), msg.get(10, TimeUnit.SECONDS));
+        pipe.shutdown();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files)
+                Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+}
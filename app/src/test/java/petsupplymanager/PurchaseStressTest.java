@@ -0,0 +1,108 @@
+/*************************************************************************************
+ * PurchaseStressTest
+ * -----------------------------------------------------------------------------------
+ * Runs 64 registers at once against a small catalog until the shelves run dry,
+ * buying single products by name and baskets of a few lines. Each register counts
+ * what it was told it sold and what it was paid. Afterwards every product must
+ * have lost exactly what was sold from its shelf, never gone below zero, and the
+ * totals and daily money must add up to what the registers were paid.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;                    // For Random
+import java.util.concurrent.*;         // For the thread pool
+import org.junit.jupiter.api.Test;
+
+class PurchaseStressTest {
+    static final int THREADS = 64;     // Registers buying at once
+    static final int PRODUCTS = 256;   // Products in the catalog
+    static final int STOCK = 2000;     // Amount on shelf of every product
+    static final int TRIES = 20_000;   // Purchases each register attempts
+    static final int MAX_AMT = 3;      // Most of a product one line buys
+
+    // What one register was told it sold
+    static final class Sold {
+        final long units[] = new long[PRODUCTS];
+        long cents;
+    }
+
+    @Test
+    void registersNeverOversellOrLoseMoney() throws Exception {
+        for (int i = ProdList.getListSize(); i < PRODUCTS; i++)
+            ProdList.addProd("Stress Test Product " + i, 199 + i * 7, 0);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        int start[] = new int[PRODUCTS], soldTot[] = new int[PRODUCTS];
+        long rev[] = new long[PRODUCTS];
+        String names[] = new String[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            sum.Restock(i, STOCK - ProdList.getAmtOnShelf(i));
+            start[i] = ProdList.getAmtOnShelf(i);
+            soldTot[i] = ProdList.getNumSoldTot(i);
+            rev[i] = ProdList.getRevenue(i);
+            names[i] = ProdList.getName(i);
+        }
+        Register reg = new Register(0L);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Sold>> runs = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            runs.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                Sold s = new Sold();
+                Basket b = new Basket();
+                go.await();
+                for (int k = 0; k < TRIES; k++) {
+                    if ((k & 7) != 7) { // Mostly one product by name
+                        int i = r.nextInt(PRODUCTS), c = 1 + r.nextInt(MAX_AMT);
+                        if (reg.Purchase(names[i], c).equals(PurchStatus.SUCCESS.getMsg())) {
+                            s.units[i] += c;
+                            s.cents += c * ProdList.getPriceCents(i);
+                        }
+                        continue;
+                    }
+                    b.clear(); // Every eighth is a basket of two or three lines
+                    int lines = 2 + r.nextInt(2);
+                    for (int j = 0; j < lines; j++)
+                        b.add(names[r.nextInt(PRODUCTS)], 1 + r.nextInt(MAX_AMT));
+                    PurchStatus res[] = reg.Purchase(b);
+                    if (res[0] != PurchStatus.SUCCESS)
+                        continue;
+                    for (int j = 0; j < lines; j++) {
+                        assertEquals(PurchStatus.SUCCESS, res[j], "basket sold in part");
+                        int i = reg.Lookup(b.getName(j));
+                        s.units[i] += b.getAmt(j);
+                        s.cents += b.getAmt(j) * ProdList.getPriceCents(i);
+                    }
+                }
+                return s;
+            }));
+        }
+        go.countDown();
+        long units[] = new long[PRODUCTS];
+        long cents = 0;
+        for (Future<Sold> f : runs) {
+            Sold s = f.get(2, TimeUnit.MINUTES);
+            for (int i = 0; i < PRODUCTS; i++)
+                units[i] += s.units[i];
+            cents += s.cents;
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < PRODUCTS; i++) {
+            int left = ProdList.getAmtOnShelf(i);
+            assertTrue(left >= 0, "product " + i + " oversold");
+            assertEquals(start[i] - left, units[i], "product " + i + " shelf");
+            assertEquals(soldTot[i] + units[i], ProdList.getNumSoldTot(i),
+                         "product " + i + " total sold");
+            assertEquals(rev[i] + units[i] * ProdList.getPriceCents(i),
+                         ProdList.getRevenue(i), "product " + i + " revenue");
+            assertEquals(units[i], ProdList.getNumSoldDay(i), "product " + i + " today");
+            // Far more was asked for than was stocked, so every shelf ran dry
+            assertTrue(left < MAX_AMT, "product " + i + " never ran out");
+        }
+        assertEquals(cents, Register.getDlyCents(), "daily money");
+    }
+}
@@ -0,0 +1,43 @@
+/*************************************************************************************
+ * ReorderPlannerTest
+ * -----------------------------------------------------------------------------------
+ * Sells a product out and lets two months of days go by without it being
+ * restocked. Its moving average shrinks towards zero over those days, yet it must
+ * stay on the reorder plan with something to order, while a product which never
+ * sold stays off it.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class ReorderPlannerTest {
+    static final int DAYS = 60;        // Days gone by with the product sold out
+
+    @Test
+    void soldOutProductsStayPlanned() {
+        int sold = ProdList.addProd("Planner Test Leash", 1299, 0);
+        int never = ProdList.addProd("Planner Test Collar", 899, 0);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        assertEquals("Restock Successful", sum.Restock(sold, 4));
+        Register reg = new Register(0L);
+        assertSame(PurchStatus.SUCCESS.getMsg(), reg.Purchase(sold, 4));
+        for (int d = 0; d < DAYS; d++)
+            sum.SwitchDay();
+
+        assertTrue(ProdList.history.rate(sold, ProdList.history.getLastDay())
+                   < ReorderPlanner.MIN_RATE, "rate did not decay");
+        int plan[] = ProdList.planner.plan(ProdList.getListSize());
+        assertTrue(contains(plan, sold), "sold out product left the plan");
+        assertTrue(ProdList.planner.getOrderAmt(sold) > 0, "nothing to order");
+        assertFalse(contains(plan, never), "unsold product planned");
+        assertEquals(0, ProdList.planner.getOrderAmt(never));
+    }
+
+    static boolean contains(int a[], int x) {
+        for (int v : a)
+            if (v == x)
+                return true;
+        return false;
+    }
+}
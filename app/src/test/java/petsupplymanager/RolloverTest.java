@@ -0,0 +1,130 @@
+/*************************************************************************************
+ * RolloverTest
+ * -----------------------------------------------------------------------------------
+ * Switches day over and over while 32 registers keep buying as fast as they can,
+ * with every sale saved to a sales journal, then reconciles every sale: each
+ * product's units and money must be in exactly one day, either a finished day in
+ * the sales history or today, and the total and daily money must add up to what
+ * the registers were paid. The journal is then closed and opened again, and the
+ * values it recovers must match.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.*;                // For the data folder
+import java.util.*;                    // For Random
+import java.util.concurrent.*;         // For the thread pool
+import java.util.concurrent.atomic.*;  // For the stop flag
+import org.junit.jupiter.api.Test;
+
+class RolloverTest {
+    static final int PRODUCTS = 2000;
+    static final int THREADS = 32;
+    static final int SWITCHES = 40;   // Day switches during the run
+
+    // What one register was told it sold
+    static final class Sold {
+        final long units[] = new long[PRODUCTS];
+        final long cents[] = new long[PRODUCTS];
+    }
+
+    @Test
+    void everySaleLandsInExactlyOneDay() throws Exception {
+        for (int i = ProdList.getListSize(); i < PRODUCTS; i++)
+            ProdList.addProd("Rollover Test Product " + i, 99 + i, 0);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        long soldBefore[] = new long[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            sum.Restock(i, 1_000_000 - ProdList.getAmtOnShelf(i));
+            soldBefore[i] = ProdList.getNumSoldTot(i);
+        }
+        Path dir = Files.createTempDirectory("petsupply-rollover");
+        ProdList.journal = new SalesJournal(dir);
+        Register reg = new Register(0L);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Sold>> runs = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            runs.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                Sold s = new Sold();
+                while (!stop.get()) {
+                    int i = r.nextInt(PRODUCTS), c = 1 + r.nextInt(3);
+                    assertEquals(PurchStatus.SUCCESS.getMsg(), reg.Purchase(i, c));
+                    s.units[i] += c;
+                    s.cents[i] += c * ProdList.getPriceCents(i);
+                }
+                return s;
+            }));
+        }
+        for (int d = 0; d < SWITCHES; d++) {
+            Thread.sleep(20);
+            sum.SwitchDay();
+        }
+        stop.set(true);
+        long units[] = new long[PRODUCTS], cents[] = new long[PRODUCTS];
+        long paid = 0, sales = 0;
+        for (Future<Sold> f : runs) {
+            Sold s = f.get(1, TimeUnit.MINUTES);
+            for (int i = 0; i < PRODUCTS; i++) {
+                units[i] += s.units[i];
+                cents[i] += s.cents[i];
+                paid += s.cents[i];
+                sales += s.units[i];
+            }
+        }
+        pool.shutdown();
+        assertTrue(sales > 0);
+        assertEquals(1 + SWITCHES, sum.getDay());
+
+        int last = ProdList.history.getLastDay();
+        assertEquals(SWITCHES, last);
+        for (int i = 0; i < PRODUCTS; i++) {
+            long past[] = ProdList.history.range(i, 1, last);
+            assertEquals(units[i], past[0] + ProdList.getNumSoldDay(i), "product " + i + " units");
+            assertEquals(cents[i], past[1] + ProdList.today.getCents(i), "product " + i + " cents");
+            assertEquals(soldBefore[i] + units[i], ProdList.getNumSoldTot(i));
+        }
+        assertEquals(paid, sum.getTtlCents() + Register.getDlyCents(), "total money");
+
+        // Everything must come back from the snapshot and journal
+        int amt[] = new int[PRODUCTS], soldTot[] = new int[PRODUCTS], day[] = new int[PRODUCTS];
+        long rev[] = new long[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            amt[i] = ProdList.getAmtOnShelf(i);
+            soldTot[i] = ProdList.getNumSoldTot(i);
+            rev[i] = ProdList.getRevenue(i);
+            day[i] = ProdList.getNumSoldDay(i);
+        }
+        long dly = Register.getDlyCents();
+        ProdList.journal.close();
+        for (int i = 0; i < PRODUCTS; i++)
+            ProdList.store.setAmtOnShelf(i, 0);
+        ProdList.today = new DayLedger(1);
+        SalesJournal j = new SalesJournal(dir);
+        ProdList.journal = j;
+        assertEquals(1 + SWITCHES, j.getDay());
+        assertEquals(sum.getTtlCents(), j.getTtlCents());
+        assertEquals(dly, j.getDlyCents());
+        for (int i = 0; i < PRODUCTS; i++) {
+            assertEquals(amt[i], ProdList.getAmtOnShelf(i), "product " + i + " recovered");
+            assertEquals(soldTot[i], ProdList.getNumSoldTot(i));
+            assertEquals(rev[i], ProdList.getRevenue(i));
+            assertEquals(day[i], ProdList.getNumSoldDay(i));
+        }
+        j.close();
+        ProdList.journal = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            int journals = 0;
+            for (Path f : files) {
+                if (f.getFileName().toString().endsWith(".journal"))
+                    journals++;
+                Files.delete(f);
+            }
+            assertEquals(1, journals, "old journals left behind");
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,101 @@
+/*************************************************************************************
+ * SnapshotCrashTest
+ * -----------------------------------------------------------------------------------
+ * Takes snapshots while registers keep buying and restocking, so each lock
+ * stripe is copied at a different point of the new journal. The data folder is
+ * then copied as a crash would leave it, without closing the journal, and
+ * recovered. Every product must come back with exactly the values it had: a
+ * record a stripe's copy already holds must not be replayed again, and one it
+ * does not hold must not be lost.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.*;                // For the data folders
+import java.util.*;                    // For Random
+import java.util.concurrent.*;         // For the thread pool
+import java.util.concurrent.atomic.*;  // For the stop flag
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotCrashTest {
+    static final int PRODUCTS = 100_000;
+    static final int THREADS = 16;
+    static final int SNAPSHOTS = 5;   // Snapshots taken while selling
+
+    @TempDir
+    Path dir, crash;
+
+    @Test
+    void crashImageReplaysEachRecordOnce() throws Exception {
+        for (int i = ProdList.getListSize(); i < PRODUCTS; i++)
+            ProdList.addProd("Crash Test Product " + i, 150 + i % 1000, 1_000_000);
+        SalesJournal j = new SalesJournal(dir);
+        ProdList.journal = j;
+        Register reg = new Register(0L);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            runs.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                while (!stop.get()) {
+                    int i = r.nextInt(PRODUCTS);
+                    if (r.nextInt(16) == 0)
+                        assertEquals("Restock Successful", sum.Restock(i, 5));
+                    else
+                        assertEquals(PurchStatus.SUCCESS.getMsg(), reg.Purchase(i, 1));
+                }
+            }));
+        }
+        for (int k = 0; k < SNAPSHOTS; k++) {
+            Thread.sleep(30);
+            j.Snapshot(); // Stripes copied while the registers sell
+        }
+        Thread.sleep(30); // More records after the last snapshot
+        stop.set(true);
+        for (Future<?> f : runs)
+            f.get(1, TimeUnit.MINUTES);
+        pool.shutdown();
+        j.sync();
+
+        // What a crash now would leave on disk
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files)
+                Files.copy(f, crash.resolve(f.getFileName()));
+        }
+        int amt[] = new int[PRODUCTS], soldTot[] = new int[PRODUCTS], day[] = new int[PRODUCTS];
+        long rev[] = new long[PRODUCTS], cents[] = new long[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            amt[i] = ProdList.getAmtOnShelf(i);
+            soldTot[i] = ProdList.getNumSoldTot(i);
+            rev[i] = ProdList.getRevenue(i);
+            day[i] = ProdList.getNumSoldDay(i);
+            cents[i] = ProdList.today.getCents(i);
+        }
+        long dly = Register.getDlyCents();
+        j.close();
+
+        for (int i = 0; i < PRODUCTS; i++) { // Forget everything
+            ProdList.store.setAmtOnShelf(i, 0);
+            ProdList.store.setNumSoldTot(i, 0);
+            ProdList.store.setRevTot(i, 0);
+        }
+        ProdList.today = new DayLedger(1);
+        SalesJournal rec = new SalesJournal(crash);
+        ProdList.journal = rec;
+        assertEquals(dly, rec.getDlyCents(), "daily money");
+        for (int i = 0; i < PRODUCTS; i++) {
+            assertEquals(amt[i], ProdList.getAmtOnShelf(i), "product " + i + " shelf");
+            assertEquals(soldTot[i], ProdList.getNumSoldTot(i), "product " + i + " sold");
+            assertEquals(rev[i], ProdList.getRevenue(i), "product " + i + " revenue");
+            assertEquals(day[i], ProdList.getNumSoldDay(i), "product " + i + " today");
+            assertEquals(cents[i], ProdList.today.getCents(i), "product " + i + " cents");
+        }
+        rec.close();
+        ProdList.journal = null;
+    }
+}
@@ -0,0 +1,70 @@
+/*************************************************************************************
+ * StoreServerTest
+ * -----------------------------------------------------------------------------------
+ * Checks that a request which throws on a store worker is still answered with ERR
+ * and the reason, and that the worker goes on to run the next request. The
+ * register is made to throw by giving it a sales journal which is closed. Also
+ * checks that a register client gives up on a server which never answers.
+ ************************************************************************************/
+
+package petsupplymanager;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;                         // For the streams
+import java.net.*;                        // For the sockets
+import java.nio.charset.StandardCharsets; // For the request lines
+import java.nio.file.*;                   // For the data folder
+import java.time.Duration;                // For the time limit
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StoreServerTest {
+    static {
+        System.setProperty("petsupply.connect.timeout", "500");
+    }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedRequestsAreStillAnswered() throws IOException {
+        StoreServer srv = new StoreServer(0, 1, new Register(0L),
+                                          new SupplySummary(10, 0L, 1));
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), srv.getPort())) {
+            s.setSoTimeout(10_000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    s.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(s.getOutputStream(),
+                                                StandardCharsets.UTF_8);
+            SalesJournal j = new SalesJournal(dir);
+            j.close();
+            ProdList.journal = j; // Every sale now throws IllegalStateException
+            try {
+                out.write("PURCHASE 1 " + ProdList.getName(0) + "\n");
+                out.flush();
+                String r = in.readLine();
+                assertNotNull(r, "no reply");
+                assertTrue(r.startsWith("ERR "), r);
+            } finally {
+                ProdList.journal = null;
+            }
+            out.write("PURCHASE 1 " + ProdList.getName(0) + "\nSUMMARY\n");
+            out.flush();
+            assertTrue(in.readLine().endsWith(PurchStatus.SUCCESS.getMsg()));
+            assertTrue(in.readLine().startsWith("OK "));
+        } finally {
+            srv.close();
+        }
+    }
+
+    @Test
+    void clientGivesUpOnASilentServer() throws IOException {
+        try (ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             RegisterClient rc = new RegisterClient("localhost", silent.getLocalPort())) {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                assertThrows(IOException.class, rc::NextDay);
+                assertEquals("Purchase Failed: Store Unreachable",
+                             rc.Purchase(ProdList.getName(0), 1));
+            });
+        }
+    }
+}
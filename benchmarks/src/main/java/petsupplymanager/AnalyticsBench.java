@@ -0,0 +1,51 @@
+/*************************************************************************************
+ * AnalyticsBench
+ * -----------------------------------------------------------------------------------
+ * Compares the SalesAnalytics reports run on one thread and split across the
+ * fork-join pool. Before timing, a few days of sales are made so every report has
+ * money, units and history to work from. The sales are by index, so the lookup
+ * index by name is never built, and at most SALES a day, so 10M products and
+ * their history fit in the forked JVM's heap.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.concurrent.TimeUnit;   // For the output unit
+import org.openjdk.jmh.annotations.*;   // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g") // Room for 10M products
+public class AnalyticsBench {
+    static final int SALES = 1_000_000; // Most purchases made on one day
+
+    @Param({ "10000", "1000000", "10000000" })
+    int size;             // Number of products in the catalog
+    @Param({ "false", "true" })
+    boolean parallel;     // Split the reports across threads
+
+    @Setup
+    public void setup() {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        CatalogGenerator.stockAll(1_000_000);
+        Register reg = new Register(0L);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        for (int d = 0; d < 7; d++) { // A week of sales
+            int k = Math.min(size, SALES); // Keeps the history of 10M in memory
+            for (int i : CatalogGenerator.pickIndexes(k, CatalogGenerator.SEED + d))
+                reg.Purchase(i, 1); // By index, so no name index is built
+            sum.SwitchDay();
+        }
+    }
+
+    @Benchmark
+    public int[] topByRevenue() { return SalesAnalytics.topByRevenue(10, parallel); }
+
+    @Benchmark
+    public double[] daysOfStock() { return SalesAnalytics.daysOfStock(7, parallel); }
+
+    @Benchmark
+    public byte[] abc() { return SalesAnalytics.abc(parallel); }
+}
@@ -0,0 +1,69 @@
+/*************************************************************************************
+ * CatalogGenerator
+ * -----------------------------------------------------------------------------------
+ * Fills ProdList with made up pet supply products for the benchmarks. The same size
+ * and seed always give the same names, prices and amounts, so runs on different
+ * days or machines measure the same catalog. It also picks product names to buy,
+ * with a few products picked far more often than the rest the way real sales are.
+ * ProdList is static, so a catalog lasts until the JVM ends. JMH starts a new JVM
+ * for every benchmark and parameter, so each one gets the catalog it asked for.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.Random;    // For the seeded random numbers
+
+class CatalogGenerator {
+    static final long SEED = 18; // The seed every benchmark uses
+    private static final String BRANDS[] = { "Blue Buffalo", "CANIDAE", "Merrick",
+        "Instinct", "Hill's Science Diet", "Purina Pro Plan", "Wellness", "Orijen",
+        "Nutro", "Taste of the Wild", "Royal Canin", "Iams" };
+    private static final String FLAVORS[] = { "Chicken", "Beef & Oatmeal",
+        "Salmon & Whitefish", "Lamb & Rice", "Turkey", "Duck", "Venison", "Bison" };
+    private static final String KINDS[] = { "Dry Dog Food", "Wet Dog Food",
+        "Dry Cat Food", "Wet Cat Food", "Dog Treats", "Cat Treats", "Puppy Food",
+        "Kitten Food" };
+
+    private CatalogGenerator() {} // Only static methods
+
+    // Add made up products until the list holds n products
+    static void fill(int n, long seed) {
+        Random r = new Random(seed);
+        for (int i = ProdList.getListSize(); i < n; i++) {
+            String name = BRANDS[r.nextInt(BRANDS.length)] + " "
+                        + FLAVORS[r.nextInt(FLAVORS.length)] + " "
+                        + KINDS[r.nextInt(KINDS.length)] + " " + (r.nextInt(40) + 1)
+                        + " lb #" + i; // The number keeps every name different
+            ProdList.addProd(name, 199 + r.nextInt(9800), r.nextInt(200));
+        }
+    }
+    // Put the given amount of every product on the shelf, so purchase
+    // benchmarks never run out
+    static void stockAll(int amt) {
+        SupplySummary s = new SupplySummary(0, 0L, ProdList.today.getDay());
+        for (int i = 0; i < ProdList.getListSize(); i++) {
+            int c = amt - ProdList.getAmtOnShelf(i);
+            if (c > 0)
+                s.Restock(i, c);
+        }
+    }
+    // Return k product indexes to buy. Cubing a uniform number leans the picks
+    // towards the start of the list, so a few products sell the most.
+    static int[] pickIndexes(int k, long seed) {
+        Random r = new Random(seed);
+        int n = ProdList.getListSize();
+        int p[] = new int[k];
+        for (int j = 0; j < k; j++) {
+            double u = r.nextDouble();
+            p[j] = (int) (n * u * u * u);
+        }
+        return p;
+    }
+    // Return k product names to buy, picked the same way
+    static String[] picks(int k, long seed) {
+        int p[] = pickIndexes(k, seed);
+        String names[] = new String[k];
+        for (int j = 0; j < k; j++)
+            names[j] = ProdList.getName(p[j]);
+        return names;
+    }
+}
@@ -0,0 +1,70 @@
+/*************************************************************************************
+ * HeadlessHarness
+ * -----------------------------------------------------------------------------------
+ * Runs the register and supply summary the way the windows do, but with no display:
+ * lanes of purchases go through the PurchasePipeline, the tables are refreshed as
+ * the Update button does, and the day switches on a timer. At the end it prints
+ * the purchase rate and the register metrics. It is for a quick look at the whole
+ * program under load on a machine without a screen, where JMH measures each part
+ * on its own.
+ * -----------------------------------------------------------------------------------
+ * ARGUMENTS (all optional, in order)
+ *  size    : Number of products in the catalog (100000)
+ *  seconds : How long to run (10)
+ *  lanes   : Number of threads submitting purchases (8)
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.concurrent.atomic.*;   // For the purchase counts
+
+class HeadlessHarness {
+    public static void main(String args[]) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int lanes = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        Register reg = new Register(0L);
+        SupplySummary sum = new SupplySummary(10, 0L, 1);
+        ProdTableModel prodMdl = new ProdTableModel();
+        RefillTableModel refMdl = new RefillTableModel();
+        ProdList.addListener(prodMdl);
+        PurchasePipeline pipe = new PurchasePipeline(reg, 4, 256);
+        AtomicLong done = new AtomicLong(), busy = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Thread ts[] = new Thread[lanes];
+        for (int t = 0; t < lanes; t++) {
+            String names[] = CatalogGenerator.picks(4096, CatalogGenerator.SEED + t);
+            ts[t] = new Thread(() -> {
+                for (int k = 0; System.nanoTime() < end; k++) {
+                    if (!pipe.submit(names[k & 4095], 1, msg -> done.incrementAndGet())) {
+                        busy.incrementAndGet(); // Queue full, try again shortly
+                        Thread.yield();
+                    }
+                }
+            }, "Lane " + t);
+            ts[t].start();
+        }
+        // What the supply summary window does: refresh every 100 ms, restock
+        // what the plan lists and go to the next day every second
+        for (int tick = 1; System.nanoTime() < end; tick++) {
+            Thread.sleep(100);
+            long start = RegisterMetrics.now();
+            refMdl.refresh(10);
+            prodMdl.flush();
+            ProdList.metrics.time(RegisterMetrics.REFRESH, start);
+            if (tick % 10 == 0) {
+                sum.SwitchDay();
+                sum.ReceiveOrders(100);
+            }
+        }
+        for (Thread t : ts)
+            t.join();
+        pipe.shutdown();
+        System.out.printf("%d products, %d lanes, %d s: %d purchases (%.0f/s), "
+                + "%d turned away as busy, day %d%n", size, lanes, seconds, done.get(),
+                done.get() / (double) seconds, busy.get(), sum.getDay());
+        System.out.print(ProdList.metrics.getReport());
+    }
+}
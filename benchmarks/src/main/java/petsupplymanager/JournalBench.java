@@ -0,0 +1,76 @@
+/*************************************************************************************
+ * JournalBench
+ * -----------------------------------------------------------------------------------
+ * Times Register.Purchase while every purchase is saved to the sales journal, on one
+ * thread and on 8 and 64 threads at once, so the cost of the journal can be
+ * compared with PurchaseBench. Each purchase waits for the disk, so one thread
+ * pays a whole force per purchase while many threads share each force. The async
+ * run reports purchases without waiting for the disk. The journal is written to a
+ * temporary folder which is deleted afterwards.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                       // For IOException
+import java.nio.file.*;                 // For the temporary folder
+import java.util.concurrent.TimeUnit;   // For the output unit
+import org.openjdk.jmh.annotations.*;   // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBench {
+    @Param({ "1000", "100000" })
+    int size;             // Number of products in the catalog
+
+    Register reg;
+    private Path dir;     // The temporary data folder
+
+    @Setup
+    public void setup() throws IOException {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        CatalogGenerator.stockAll(1_000_000_000);
+        dir = Files.createTempDirectory("petsupply-journal");
+        ProdList.journal = new SalesJournal(dir);
+        reg = new Register(0L);
+    }
+    @TearDown
+    public void tearDown() throws IOException {
+        ProdList.journal.close();
+        ProdList.journal = null;
+        deleteDir(dir);
+    }
+    // Delete a folder and the files in it
+    static void deleteDir(Path d) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(d)) {
+            for (Path f : files)
+                Files.delete(f);
+        }
+        Files.delete(d);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String purchase(PurchaseBench.Lane l) { return reg.Purchase(l.nextName(), 1); }
+
+    @Benchmark
+    @Threads(8)
+    public String purchaseContended(PurchaseBench.Lane l) {
+        return reg.Purchase(l.nextName(), 1);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String purchaseContended64(PurchaseBench.Lane l) {
+        return reg.Purchase(l.nextName(), 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    @Fork(value = 1, jvmArgsAppend = "-Dpetsupply.journal.async=true")
+    public String purchaseAsync(PurchaseBench.Lane l) {
+        return reg.Purchase(l.nextName(), 1);
+    }
+}
@@ -0,0 +1,73 @@
+/*************************************************************************************
+ * JournalRecoveryBench
+ * -----------------------------------------------------------------------------------
+ * Times starting up from a data folder: loading the snapshot and replaying a journal
+ * of a given number of purchases. The folder is made once, then copied fresh before
+ * every start, since a start changes the files it recovers from. The journal is
+ * written async, so filling it does not wait for a force per purchase.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                       // For IOException
+import java.nio.file.*;                 // For the data folders
+import java.util.concurrent.TimeUnit;   // For the output unit
+import org.openjdk.jmh.annotations.*;   // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dpetsupply.journal.async=true")
+public class JournalRecoveryBench {
+    @Param({ "100000" })
+    int size;             // Number of products in the catalog
+    @Param({ "100000", "1000000" })
+    int records;          // Purchases in the journal
+
+    private Path saved;   // The folder every start is copied from
+    private Path dir;     // The folder of the current start
+    private SalesJournal journal;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        CatalogGenerator.stockAll(1_000_000_000);
+        saved = Files.createTempDirectory("petsupply-saved");
+        SalesJournal j = new SalesJournal(saved);
+        ProdList.journal = j;
+        j.Snapshot(); // Start from a snapshot of the stocked catalog
+        Register reg = new Register(0L);
+        String names[] = CatalogGenerator.picks(4096, CatalogGenerator.SEED);
+        for (int k = 0; k < records; k++)
+            reg.Purchase(names[k & 4095], 1);
+        // Let the flusher write the last records, then leave the journal as a
+        // crash would, without the snapshot close would write
+        Thread.sleep(20 * SalesJournal.FLUSH_MS);
+        ProdList.journal = null;
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        JournalBench.deleteDir(saved);
+    }
+    // Copy the saved folder before each start
+    @Setup(Level.Invocation)
+    public void copy() throws IOException {
+        dir = Files.createTempDirectory("petsupply-recover");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(saved)) {
+            for (Path f : files)
+                Files.copy(f, dir.resolve(f.getFileName()));
+        }
+    }
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        journal.close();
+        JournalBench.deleteDir(dir);
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        journal = new SalesJournal(dir);
+        return journal.getDay();
+    }
+}
@@ -0,0 +1,136 @@
+/*************************************************************************************
+ * LoadGenerator
+ * -----------------------------------------------------------------------------------
+ * Drives a StoreServer the way many register lanes at once would: every lane is
+ * its own connection, sends a request, waits for the reply and sends the next
+ * one. One thread runs all the lanes without blocking, so hundreds of lanes do not
+ * need hundreds of threads. Most requests are purchases of one item, every eighth
+ * is a lookup. The names are picked as in the JMH benchmarks, leaning towards a
+ * few popular products. At the end it prints the requests per second and the
+ * latency percentiles, measured from sending a request to reading its reply. The
+ * first part of the run warms up and is not counted.
+ * -----------------------------------------------------------------------------------
+ * ARGUMENTS (all optional, in order)
+ *  lanes   : Number of lanes (200)
+ *  seconds : How long to run (10)
+ *  server  : host:port of a running server. Without one, a server is started
+ *            in this program with a made up catalog of 100000 products.
+ *  catalog : With a server given, a catalog file holding the server's products,
+ *            to pick names from (the built in products)
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.io.*;                         // For IOException
+import java.net.*;                        // For the address
+import java.nio.*;                        // For ByteBuffer
+import java.nio.channels.*;               // For the selector and socket channels
+import java.nio.charset.StandardCharsets; // For the request lines
+import java.util.*;                       // For Iterator
+
+class LoadGenerator {
+    static final int SIZE = 100_000;    // Products in a server started here
+    static final int PICKS = 4096;      // Names each lane cycles through
+
+    // One register lane
+    private static final class Lane {
+        final SocketChannel ch;
+        final String names[];
+        final ByteBuffer in = ByteBuffer.allocate(1024);
+        long sentAt;                    // When the request in flight was sent
+        int k;                          // Number of requests sent
+        Lane(SocketChannel c, String n[]) { ch = c; names = n; }
+        // Send the next request
+        void send() throws IOException {
+            String name = names[k & (PICKS - 1)];
+            String req = (k & 7) == 7 ? "LOOKUP " + name : "PURCHASE 1 " + name;
+            k++;
+            ByteBuffer b = ByteBuffer.wrap((req + "\n").getBytes(StandardCharsets.UTF_8));
+            sentAt = System.nanoTime();
+            while (b.hasRemaining())
+                ch.write(b);
+        }
+    }
+
+    public static void main(String args[]) throws IOException {
+        int lanes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        StoreServer local = null;
+        InetSocketAddress addr;
+        if (args.length > 2) {
+            int c = args[2].lastIndexOf(':');
+            addr = new InetSocketAddress(args[2].substring(0, c),
+                                         Integer.parseInt(args[2].substring(c + 1)));
+            if (args.length > 3) // Pick from the same names the server has
+                CatalogIO.load(java.nio.file.Paths.get(args[3]));
+        } else {
+            System.setProperty("java.awt.headless", "true");
+            CatalogGenerator.fill(SIZE, CatalogGenerator.SEED);
+            CatalogGenerator.stockAll(1_000_000);
+            local = new StoreServer(0, Runtime.getRuntime().availableProcessors(),
+                                    new Register(0L), new SupplySummary(10, 0L, 1));
+            addr = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         local.getPort());
+        }
+
+        Selector sel = Selector.open();
+        for (int t = 0; t < lanes; t++) {
+            SocketChannel ch = SocketChannel.open(addr);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.configureBlocking(false);
+            Lane l = new Lane(ch, CatalogGenerator.picks(PICKS, CatalogGenerator.SEED + t));
+            ch.register(sel, SelectionKey.OP_READ, l);
+            l.send();
+        }
+
+        long hist[] = new long[RegisterMetrics.BUCKETS]; // Latencies
+        long done = 0, errors = 0;
+        long start = System.nanoTime();
+        long counted = start + seconds * 200_000_000L; // The first fifth warms up
+        long end = start + seconds * 1_000_000_000L;
+        boolean counting = false;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end)
+                break;
+            if (!counting && now >= counted) { // Warm up over, start counting
+                counting = true;
+                Arrays.fill(hist, 0);
+                done = errors = 0;
+            }
+            sel.select(100);
+            Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                Lane l = (Lane) key.attachment();
+                if (l.ch.read(l.in) < 0)
+                    throw new EOFException("Server closed a lane");
+                int p = l.in.position();
+                if (p == 0 || l.in.get(p - 1) != '\n')
+                    continue; // The reply is not all here yet
+                long got = System.nanoTime();
+                hist[RegisterMetrics.bucket(got - l.sentAt)]++;
+                done++;
+                if (l.in.get(0) != 'O') // ERR
+                    errors++;
+                l.in.clear();
+                l.send();
+            }
+        }
+        double secs = (end - counted) / 1e9;
+        System.out.printf("%d lanes, %.1f s counted: %d requests (%.0f/s), %d errors%n",
+                          lanes, secs, done, done / secs, errors);
+        System.out.printf("latency p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                          RegisterMetrics.percentile(hist, 0.5) / 1000,
+                          RegisterMetrics.percentile(hist, 0.99) / 1000,
+                          RegisterMetrics.percentile(hist, 0.999) / 1000,
+                          RegisterMetrics.percentile(hist, 1) / 1000);
+        for (SelectionKey key : sel.keys())
+            key.channel().close();
+        sel.close();
+        if (local != null) {
+            local.close();
+            System.out.print(ProdList.metrics.getReport());
+        }
+    }
+}
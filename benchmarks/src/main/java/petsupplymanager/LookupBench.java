@@ -0,0 +1,39 @@
+/*************************************************************************************
+ * LookupBench
+ * -----------------------------------------------------------------------------------
+ * Compares finding a product by name with Register.LinearSearch, which reads every
+ * name in the list, and with Register.Lookup, which goes through the name index.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.concurrent.TimeUnit;   // For the output unit
+import org.openjdk.jmh.annotations.*;   // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBench {
+    @Param({ "5", "1000", "100000", "1000000" })
+    int size;             // Number of products in the catalog
+
+    private Register reg;     // Register doing the searches
+    private String names[];   // Names to search for, in turn
+    private int next;         // The next name to search for
+
+    @Setup
+    public void setup() {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        reg = new Register(0L);
+        names = CatalogGenerator.picks(1024, CatalogGenerator.SEED);
+        reg.Lookup(names[0]); // Bring the index up to date before timing
+    }
+
+    @Benchmark
+    public int linearSearch() { return reg.LinearSearch(names[next++ & 1023]); }
+
+    @Benchmark
+    public int lookup() { return reg.Lookup(names[next++ & 1023]); }
+}
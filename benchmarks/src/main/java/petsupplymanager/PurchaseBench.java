@@ -0,0 +1,69 @@
+/*************************************************************************************
+ * PurchaseBench
+ * -----------------------------------------------------------------------------------
+ * Times Register.Purchase on one thread, on eight and on 64 threads buying at
+ * once, and once more with the register metrics turned off to show what recording
+ * costs. Other numbers of lanes can be run with JMH's -t option, such as
+ *  java -jar benchmarks/target/benchmarks.jar PurchaseBench.purchaseContended -t 16
+ * Every shelf is stocked high enough that no purchase runs out during a run.
+ * Each thread buys its own list of products, picked the same way every run.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.concurrent.TimeUnit;        // For the output unit
+import java.util.concurrent.atomic.*;        // For numbering the threads
+import org.openjdk.jmh.annotations.*;        // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PurchaseBench {
+    @Param({ "5", "1000", "100000", "1000000" })
+    int size;             // Number of products in the catalog
+
+    Register reg;         // Register every thread buys through
+
+    // The products one thread buys, in turn. Also used by JournalBench.
+    @State(Scope.Thread)
+    public static class Lane {
+        private static final AtomicInteger lanes = new AtomicInteger(); // Started
+        String names[];
+        int next;
+
+        // The names are picked on first use, once the benchmark has filled the
+        // catalog
+        String nextName() {
+            if (names == null)
+                names = CatalogGenerator.picks(1024,
+                                     CatalogGenerator.SEED + lanes.incrementAndGet());
+            return names[next++ & 1023];
+        }
+    }
+
+    @Setup
+    public void setup() {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        CatalogGenerator.stockAll(1_000_000_000);
+        reg = new Register(0L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String purchase(Lane l) { return reg.Purchase(l.nextName(), 1); }
+
+    @Benchmark
+    @Threads(8)
+    public String purchaseContended(Lane l) { return reg.Purchase(l.nextName(), 1); }
+
+    @Benchmark
+    @Threads(64)
+    public String purchaseContended64(Lane l) { return reg.Purchase(l.nextName(), 1); }
+
+    @Benchmark
+    @Threads(1)
+    @Fork(value = 1, jvmArgsAppend = "-Dpetsupply.metrics=false")
+    public String purchaseNoMetrics(Lane l) { return reg.Purchase(l.nextName(), 1); }
+}
@@ -0,0 +1,79 @@
+/*************************************************************************************
+ * RefreshBench
+ * -----------------------------------------------------------------------------------
+ * Times what the Update button does: refilling the refill priority table from the
+ * low stock index and telling the product table which rows changed. Before each
+ * refresh some purchases are made, untimed, so there are changed rows to report.
+ * scanRefill finds the same refill rows the way they were first found, by checking
+ * the amount of every product, to compare against.
+ * The table models need no window, so this runs headless.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.concurrent.TimeUnit;   // For the output unit
+import org.openjdk.jmh.annotations.*;   // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RefreshBench {
+    @Param({ "5", "1000", "100000", "1000000" })
+    int size;             // Number of products in the catalog
+    @Param({ "10" })
+    int lowAmt;           // The refill threshold, as on the slider
+    @Param({ "100" })
+    int changes;          // Purchases made before each refresh
+
+    private Register reg;
+    private SupplySummary sum;
+    private ProdTableModel prodMdl;
+    private RefillTableModel refMdl;
+    private String names[];   // Names bought, in turn
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        reg = new Register(0L);
+        sum = new SupplySummary(lowAmt, 0L, 1);
+        prodMdl = new ProdTableModel();
+        refMdl = new RefillTableModel();
+        ProdList.addListener(prodMdl);
+        names = CatalogGenerator.picks(4096, CatalogGenerator.SEED);
+    }
+    // Change some rows before each refresh, restocking a product which ran out
+    // so the catalog does not empty over a long run
+    @Setup(Level.Invocation)
+    public void change() {
+        for (int j = 0; j < changes; j++) {
+            String n = names[next++ & 4095];
+            if (!reg.Purchase(n, 1).equals(PurchStatus.SUCCESS.getMsg()))
+                sum.Restock(reg.Lookup(n), 50);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        refMdl.refresh(lowAmt);
+        prodMdl.flush();
+        return refMdl.getRowCount();
+    }
+
+    @Benchmark
+    public int scanRefill() {
+        int s = ProdList.getListSize();
+        int rows[] = new int[16], n = 0;
+        for (int i = 0; i < s; i++) {
+            if (ProdList.getAmtOnShelf(i) <= lowAmt) {
+                if (n == rows.length)
+                    rows = java.util.Arrays.copyOf(rows, n * 2);
+                rows[n++] = i;
+            }
+        }
+        prodMdl.flush();
+        return n;
+    }
+}
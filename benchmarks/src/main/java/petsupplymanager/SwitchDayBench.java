@@ -0,0 +1,50 @@
+/*************************************************************************************
+ * SwitchDayBench
+ * -----------------------------------------------------------------------------------
+ * Times SupplySummary.SwitchDay after a day of sales. Before each switch a fixed
+ * number of purchases are made, untimed, so every day ends with the same amount of
+ * sales to seal, add to the history and plan reorders from.
+ ************************************************************************************/
+
+package petsupplymanager;
+import java.util.concurrent.TimeUnit;   // For the output unit
+import org.openjdk.jmh.annotations.*;   // For the JMH annotations
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwitchDayBench {
+    @Param({ "5", "1000", "100000", "1000000" })
+    int size;             // Number of products in the catalog
+    @Param({ "1000" })
+    int sales;            // Purchases made each day
+
+    private Register reg;
+    private SupplySummary sum;
+    private String names[];   // Names bought, in turn
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CatalogGenerator.fill(size, CatalogGenerator.SEED);
+        CatalogGenerator.stockAll(1_000_000_000);
+        reg = new Register(0L);
+        sum = new SupplySummary(10, 0L, 1);
+        names = CatalogGenerator.picks(4096, CatalogGenerator.SEED);
+    }
+    // Make a day of sales before each switch
+    @Setup(Level.Invocation)
+    public void sell() {
+        for (int j = 0; j < sales; j++)
+            reg.Purchase(names[next++ & 4095], 1);
+    }
+
+    @Benchmark
+    public int switchDay() {
+        sum.SwitchDay();
+        return sum.getDay();
+    }
+}